@@ -0,0 +1,89 @@
+package com.github.libsm64.benchmark;
+
+import com.github.libsm64.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.lang.foreign.MemorySession;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the per call cost of the libsm64 downcalls through {@link LibSM64 LibSM64}. libsm64 is not thread safe, so
+ * this always runs single threaded against a single shared world.
+ * <p>
+ * Requires the ROM, see {@link Fixtures#romPath() Fixtures.romPath}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(1)
+@Fork(1)
+public class DowncallBenchmark {
+    private MemorySession session;
+    private SM64Surface.Buffer floor;
+    private SM64MarioInputs inputs;
+    private SM64MarioState state;
+    private SM64MarioGeometryBuffers buffers;
+    private SM64SurfaceObject surfaceObject;
+    private SM64ObjectTransform transform;
+    private int marioId;
+    private long objectId;
+    
+    @Setup
+    public void setup() throws IOException {
+        session = MemorySession.openShared();
+        Fixtures.globalInit(session);
+        
+        floor = Fixtures.floor(session);
+        LibSM64.sm64_static_surfaces_load(floor);
+        
+        marioId = LibSM64.sm64_mario_create((short) 0, (short) 0, (short) 0);
+        if (marioId < 0) {
+            throw new IllegalStateException("Failed to create Mario");
+        }
+        
+        inputs = new SM64MarioInputs(session);
+        state = new SM64MarioState(session);
+        buffers = SM64MarioGeometryBuffers.allocate(session);
+        
+        surfaceObject = new SM64SurfaceObject(session).surfaces(Fixtures.floor(session));
+        objectId = LibSM64.sm64_surface_object_create(surfaceObject);
+        transform = new SM64ObjectTransform(session);
+    }
+    
+    @TearDown
+    public void tearDown() {
+        LibSM64.sm64_surface_object_delete(objectId);
+        LibSM64.sm64_mario_delete(marioId);
+        LibSM64.sm64_global_terminate();
+        session.close();
+    }
+    
+    @Benchmark
+    public SM64MarioState marioTick() {
+        LibSM64.sm64_mario_tick(marioId, inputs, state, buffers);
+        return state;
+    }
+    
+    @Benchmark
+    public void marioCreateDelete() {
+        LibSM64.sm64_mario_delete(LibSM64.sm64_mario_create((short) 0, (short) 0, (short) 0));
+    }
+    
+    @Benchmark
+    public void staticSurfacesLoad() {
+        LibSM64.sm64_static_surfaces_load(floor);
+    }
+    
+    @Benchmark
+    public void surfaceObjectMove() {
+        LibSM64.sm64_surface_object_move(objectId, transform);
+    }
+    
+    @Benchmark
+    public void surfaceObjectCreateDelete() {
+        LibSM64.sm64_surface_object_delete(LibSM64.sm64_surface_object_create(surfaceObject));
+    }
+}
@@ -0,0 +1,96 @@
+package com.github.libsm64.benchmark;
+
+import com.github.libsm64.LibSM64;
+import com.github.libsm64.SM64Rom;
+import com.github.libsm64.SM64Surface;
+
+import java.io.IOException;
+import java.lang.foreign.MemoryAddress;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.MemorySession;
+import java.lang.foreign.SegmentAllocator;
+import java.lang.foreign.ValueLayout;
+import java.nio.file.Path;
+
+/**
+ * Shared setup code for the benchmarks.
+ */
+final class Fixtures {
+    private Fixtures() {
+        throw new AssertionError();
+    }
+    
+    /**
+     * The system property that holds the path to the ROM.
+     */
+    static final String ROM_PROPERTY = "jsm64.rom";
+    
+    /**
+     * Half the width of the floor created by {@link #floor(SegmentAllocator) floor}.
+     */
+    private static final short FLOOR_SIZE = 8192;
+    
+    /**
+     * Gets the path to the ROM that was passed to the benchmark JVM.
+     *
+     * @return The ROM path
+     * @throws IllegalStateException If no ROM was provided
+     */
+    static Path romPath() {
+        var rom = System.getProperty(ROM_PROPERTY);
+        if (rom == null) {
+            throw new IllegalStateException("This benchmark requires the ROM, run it with -Psm64Rom=path/to/SuperMario64.z64");
+        }
+        return Path.of(rom);
+    }
+    
+    /**
+     * Maps the ROM into memory.
+     *
+     * @param session The session of the mapping
+     * @return The ROM
+     * @throws IOException If the ROM could not be mapped or is not the US z64 ROM
+     */
+    static MemorySegment loadRom(MemorySession session) throws IOException {
+        return SM64Rom.load(romPath(), session).segment();
+    }
+    
+    /**
+     * Loads the ROM and initializes libsm64 with it.
+     *
+     * @param session The session used for the ROM and texture
+     * @throws IOException If the ROM could not be loaded
+     */
+    static void globalInit(MemorySession session) throws IOException {
+        var rom = loadRom(session);
+        var texture = session.allocate(LibSM64.SM64_TEXTURE_WIDTH * LibSM64.SM64_TEXTURE_HEIGHT * 4, Long.BYTES);
+        LibSM64.sm64_global_init(rom, texture, MemoryAddress.NULL);
+    }
+    
+    /**
+     * Creates a flat square floor at y = 0 made from two triangles.
+     *
+     * @param allocator The allocator for the surfaces
+     * @return The floor surfaces
+     */
+    static SM64Surface.Buffer floor(SegmentAllocator allocator) {
+        var surfaces = SM64Surface.buffer(2, allocator);
+        vertices(surfaces.get(0), -FLOOR_SIZE, 0, -FLOOR_SIZE, -FLOOR_SIZE, 0, FLOOR_SIZE, FLOOR_SIZE, 0, FLOOR_SIZE);
+        vertices(surfaces.get(1), -FLOOR_SIZE, 0, -FLOOR_SIZE, FLOOR_SIZE, 0, FLOOR_SIZE, FLOOR_SIZE, 0, -FLOOR_SIZE);
+        return surfaces;
+    }
+    
+    /**
+     * Sets the vertices of a surface.
+     *
+     * @param surface The surface to modify
+     * @param vertices The nine vertex components
+     */
+    static void vertices(SM64Surface surface, int... vertices) {
+        var shorts = new short[vertices.length];
+        for (int i = 0; i < vertices.length; i++) {
+            shorts[i] = (short) vertices[i];
+        }
+        MemorySegment.copy(shorts, 0, surface.vertices(), ValueLayout.JAVA_SHORT, 0, shorts.length);
+    }
+}
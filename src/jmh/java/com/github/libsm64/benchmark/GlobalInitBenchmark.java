@@ -0,0 +1,47 @@
+package com.github.libsm64.benchmark;
+
+import com.github.libsm64.LibSM64;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.lang.foreign.MemoryAddress;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.MemorySession;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@code sm64_global_init} and {@code sm64_global_terminate}. These decode the ROM so they are far too slow
+ * for the usual time based modes.
+ * <p>
+ * Requires the ROM, see {@link Fixtures#romPath() Fixtures.romPath}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 20)
+@Threads(1)
+@Fork(1)
+public class GlobalInitBenchmark {
+    private MemorySession session;
+    private MemorySegment rom;
+    private MemorySegment texture;
+    
+    @Setup
+    public void setup() throws IOException {
+        session = MemorySession.openShared();
+        rom = Fixtures.loadRom(session);
+        texture = session.allocate(LibSM64.SM64_TEXTURE_WIDTH * LibSM64.SM64_TEXTURE_HEIGHT * 4, Long.BYTES);
+    }
+    
+    @TearDown
+    public void tearDown() {
+        session.close();
+    }
+    
+    @Benchmark
+    public void globalInitTerminate() {
+        LibSM64.sm64_global_init(rom, texture, MemoryAddress.NULL);
+        LibSM64.sm64_global_terminate();
+    }
+}
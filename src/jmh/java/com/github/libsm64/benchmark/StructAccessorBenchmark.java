@@ -0,0 +1,122 @@
+package com.github.libsm64.benchmark;
+
+import com.github.libsm64.SM64MarioInputs;
+import com.github.libsm64.SM64MarioState;
+import com.github.libsm64.SM64Surface;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.lang.foreign.MemorySession;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the {@link java.lang.invoke.VarHandle VarHandle} backed accessors of the struct records. These do not touch
+ * libsm64 and can be run without the natives or a ROM.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StructAccessorBenchmark {
+    private static final int SURFACE_COUNT = 1024;
+    
+    private MemorySession session;
+    private SM64MarioInputs inputs;
+    private SM64MarioState state;
+    private SM64Surface surface;
+    private SM64Surface.Buffer surfaces;
+    private int surfaceIndex;
+    private final float[] vector = new float[3];
+    
+    @Setup
+    public void setup() {
+        session = MemorySession.openShared();
+        inputs = new SM64MarioInputs(session);
+        state = new SM64MarioState(session);
+        surface = new SM64Surface(session);
+        surfaces = SM64Surface.buffer(SURFACE_COUNT, session);
+    }
+    
+    @TearDown
+    public void tearDown() {
+        session.close();
+    }
+    
+    @Benchmark
+    public void inputsGet(Blackhole blackhole) {
+        blackhole.consume(inputs.camLookX());
+        blackhole.consume(inputs.camLookY());
+        blackhole.consume(inputs.stickX());
+        blackhole.consume(inputs.stickY());
+        blackhole.consume(inputs.buttonA());
+        blackhole.consume(inputs.buttonB());
+        blackhole.consume(inputs.buttonZ());
+    }
+    
+    @Benchmark
+    public SM64MarioInputs inputsSet() {
+        return inputs
+            .camLookX(1)
+            .camLookY(2)
+            .stickX(0.5F)
+            .stickY(-0.5F)
+            .buttonA(true)
+            .buttonB(false)
+            .buttonZ(true);
+    }
+    
+    @Benchmark
+    public void stateGet(Blackhole blackhole) {
+        blackhole.consume(state.position());
+        blackhole.consume(state.velocity());
+        blackhole.consume(state.faceAngle());
+        blackhole.consume(state.health());
+    }
+    
+    @Benchmark
+    public void stateGetPrimitive(Blackhole blackhole) {
+        blackhole.consume(state.positionX());
+        blackhole.consume(state.positionY());
+        blackhole.consume(state.positionZ());
+        blackhole.consume(state.velocity(vector));
+    }
+    
+    @Benchmark
+    public SM64MarioState stateSetPrimitive() {
+        return state
+            .position(1, 2, 3)
+            .velocity(4, 5, 6);
+    }
+    
+    @Benchmark
+    public SM64MarioState stateSet() {
+        return state
+            .faceAngle(1)
+            .health((short) 0x0880);
+    }
+    
+    @Benchmark
+    public void surfaceGet(Blackhole blackhole) {
+        blackhole.consume(surface.type());
+        blackhole.consume(surface.force());
+        blackhole.consume(surface.terrain());
+        blackhole.consume(surface.vertices());
+    }
+    
+    @Benchmark
+    public SM64Surface surfaceSet() {
+        return surface
+            .type((short) 0)
+            .force((short) 0)
+            .terrain(1);
+    }
+    
+    @Benchmark
+    public SM64Surface bufferGet() {
+        var index = surfaceIndex;
+        surfaceIndex = (index + 1) & (SURFACE_COUNT - 1);
+        return surfaces.get(index);
+    }
+}
@@ -0,0 +1,312 @@
+package com.github.libsm64;
+
+import java.lang.foreign.MemoryAddress;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.MemorySession;
+import java.lang.foreign.ValueLayout;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Pattern;
+
+/**
+ * A debug print callback that keeps libsm64 from waiting on the logger. The upcall only copies the raw message bytes
+ * into a preallocated ring of fixed size slots, a background thread decodes, filters and dispatches them.
+ * <p>
+ * Messages longer than a slot are truncated and messages that arrive while the ring is full are dropped, both are
+ * counted. The ring is lock free and can be written to from any amount of threads.
+ */
+public final class AsyncDebugPrint implements SM64DebugPrintFunctionPtr, AutoCloseable {
+    /**
+     * The severity of a message. libsm64 does not tag its messages, the level is guessed by the classifier.
+     */
+    public enum Level {
+        DEBUG,
+        INFO,
+        WARNING,
+        ERROR,
+    }
+    
+    /**
+     * The default classifier, looks for common words in the message.
+     */
+    public static final Function<String, Level> DEFAULT_CLASSIFIER = (message) -> {
+        var lower = message.toLowerCase(Locale.ROOT);
+        if (lower.contains("error") || lower.contains("fail")) {
+            return Level.ERROR;
+        } else if (lower.contains("warn")) {
+            return Level.WARNING;
+        } else {
+            return Level.DEBUG;
+        }
+    };
+    
+    /**
+     * How long the consumer sleeps when the ring is empty.
+     */
+    private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    
+    private final int slots;
+    private final int slotBytes;
+    private final byte[] data;
+    private final int[] lengths;
+    
+    /**
+     * The sequence of every slot. A slot is free for the producer with position p when its sequence is p and readable
+     * for the consumer when it is p + 1.
+     */
+    private final AtomicLongArray sequences;
+    
+    /**
+     * The next position to claim, -1 once this was closed.
+     */
+    private final AtomicLong tail = new AtomicLong();
+    private long head;
+    
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder truncated = new LongAdder();
+    
+    private final Level minimumLevel;
+    private final Pattern pattern;
+    private final Function<String, Level> classifier;
+    private final Consumer<String> sink;
+    
+    private final Thread consumer;
+    private volatile boolean running = true;
+    
+    /**
+     * Creates a debug printer that prints every message to {@link System#out System.out}.
+     */
+    public AsyncDebugPrint() {
+        this(1024, 256, Level.DEBUG, null, DEFAULT_CLASSIFIER, System.out::println);
+    }
+    
+    /**
+     * Creates a debug printer.
+     *
+     * @param slots The amount of messages that can be queued
+     * @param slotBytes The maximum length of a message in bytes, longer messages are truncated
+     * @param minimumLevel Messages below this level are discarded
+     * @param pattern Only messages this pattern finds a match in are kept, null to keep all
+     * @param classifier Assigns a level to a message
+     * @param sink Receives the messages on the background thread
+     */
+    public AsyncDebugPrint(int slots, int slotBytes, Level minimumLevel, Pattern pattern, Function<String, Level> classifier, Consumer<String> sink) {
+        if (slots <= 0) {
+            throw new IllegalArgumentException("slots must be greater than 0");
+        }
+        if (slotBytes <= 0) {
+            throw new IllegalArgumentException("slotBytes must be greater than 0");
+        }
+        this.slots = slots;
+        this.slotBytes = slotBytes;
+        this.minimumLevel = Objects.requireNonNull(minimumLevel, "minimumLevel can't be null");
+        this.pattern = pattern;
+        this.classifier = Objects.requireNonNull(classifier, "classifier can't be null");
+        this.sink = Objects.requireNonNull(sink, "sink can't be null");
+        
+        data = new byte[Math.multiplyExact(slots, slotBytes)];
+        lengths = new int[slots];
+        sequences = new AtomicLongArray(slots);
+        for (int i = 0; i < slots; i++) {
+            sequences.set(i, i);
+        }
+        
+        consumer = new Thread(this::consume, "jSM64 Debug Print");
+        consumer.setDaemon(true);
+        consumer.start();
+    }
+    
+    /**
+     * Creates the native callback for this printer, pass it to sm64_global_init.
+     *
+     * @param session The session of the upcall stub
+     * @return The native callback
+     */
+    public MemorySegment allocate(MemorySession session) {
+        return SM64DebugPrintFunctionPtr.allocate(this, session);
+    }
+    
+    /**
+     * Queues a message from native code without decoding or allocating it.
+     *
+     * @param message The null terminated message
+     */
+    @Override
+    public void invoke(MemoryAddress message) {
+        if (message.equals(MemoryAddress.NULL)) {
+            return;
+        }
+        
+        var length = 0;
+        while (length < slotBytes && message.get(ValueLayout.JAVA_BYTE, length) != 0) {
+            length++;
+        }
+        var isTruncated = length == slotBytes && message.get(ValueLayout.JAVA_BYTE, length) != 0;
+        
+        var position = claim();
+        if (position < 0) {
+            return;
+        }
+        var slot = (int) (position % slots);
+        MemorySegment.copy(
+            MemorySegment.ofAddress(message, length, MemorySession.global()), ValueLayout.JAVA_BYTE, 0,
+            data, slot * slotBytes, length
+        );
+        publish(position, slot, length, isTruncated);
+    }
+    
+    /**
+     * Queues a message from Java code.
+     *
+     * @param message The message
+     */
+    @Override
+    public void invoke(String message) {
+        if (message == null) {
+            return;
+        }
+        
+        var bytes = message.getBytes(StandardCharsets.UTF_8);
+        var length = Math.min(bytes.length, slotBytes);
+        var position = claim();
+        if (position < 0) {
+            return;
+        }
+        var slot = (int) (position % slots);
+        System.arraycopy(bytes, 0, data, slot * slotBytes, length);
+        publish(position, slot, length, length < bytes.length);
+    }
+    
+    /**
+     * Claims the next free slot.
+     *
+     * @return The position of the slot or -1 if the ring was full or closed
+     */
+    private long claim() {
+        if (!running) {
+            dropped.increment();
+            return -1;
+        }
+        
+        var position = tail.get();
+        while (true) {
+            if (position < 0) {
+                dropped.increment();
+                return -1;
+            }
+            var sequence = sequences.getAcquire((int) (position % slots));
+            var difference = sequence - position;
+            if (difference == 0) {
+                if (tail.weakCompareAndSetVolatile(position, position + 1)) {
+                    return position;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                dropped.increment();
+                return -1;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+    
+    private void publish(long position, int slot, int length, boolean isTruncated) {
+        if (isTruncated) {
+            truncated.increment();
+        }
+        lengths[slot] = length;
+        sequences.setRelease(slot, position + 1);
+    }
+    
+    private void consume() {
+        while (running) {
+            if (!drain()) {
+                LockSupport.parkNanos(IDLE_NANOS);
+            }
+        }
+        drain();
+    }
+    
+    /**
+     * Dispatches every queued message.
+     *
+     * @return True if there were any messages
+     */
+    private boolean drain() {
+        var any = false;
+        while (true) {
+            var slot = (int) (head % slots);
+            if (sequences.getAcquire(slot) != head + 1) {
+                return any;
+            }
+            
+            var message = new String(data, slot * slotBytes, lengths[slot], StandardCharsets.UTF_8);
+            sequences.setRelease(slot, head + slots);
+            head++;
+            any = true;
+            
+            if (pattern != null && !pattern.matcher(message).find()) {
+                continue;
+            }
+            if (classifier.apply(message).compareTo(minimumLevel) < 0) {
+                continue;
+            }
+            try {
+                sink.accept(message);
+            } catch (Throwable e) {
+                var thread = Thread.currentThread();
+                thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+            }
+        }
+    }
+    
+    /**
+     * Gets the amount of messages that were dropped because the ring was full.
+     *
+     * @return The amount of dropped messages
+     */
+    public long dropped() {
+        return dropped.sum();
+    }
+    
+    /**
+     * Gets the amount of messages that were cut off at the slot size.
+     *
+     * @return The amount of truncated messages
+     */
+    public long truncated() {
+        return truncated.sum();
+    }
+    
+    /**
+     * Stops the background thread after dispatching every queued message. Messages that arrive afterwards are counted as dropped.
+     */
+    @Override
+    public void close() {
+        running = false;
+        // Nothing can be claimed after this, every message that got a slot is dispatched below
+        var end = tail.getAndSet(-1);
+        LockSupport.unpark(consumer);
+        try {
+            consumer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        
+        // Producers that claimed a slot before the tail was closed may still be copying their message
+        while (head < end) {
+            if (!drain()) {
+                Thread.onSpinWait();
+            }
+        }
+    }
+}
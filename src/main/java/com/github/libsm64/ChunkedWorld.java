@@ -0,0 +1,300 @@
+package com.github.libsm64;
+
+import java.lang.foreign.MemoryAddress;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.MemorySession;
+import java.lang.foreign.ValueLayout;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
+/**
+ * Streams the static surfaces of a large level around the active Marios. The level is split into a grid of square
+ * chunks on the X/Z plane, only the chunks around tracked Marios are loaded with
+ * {@link LibSM64#sm64_static_surfaces_load(SM64Surface.Buffer) sm64_static_surfaces_load}.
+ * <p>
+ * Chunks are loaded within the load radius of a Mario but only unloaded once they are outside of the load radius plus
+ * one, so walking along a chunk border does not reload the surfaces every tick. New surface sets are built on a
+ * background executor and loaded by {@link #update() update} once they are ready.
+ * <p>
+ * Apart from the background builds this is not thread safe, use it from the thread that owns libsm64.
+ */
+public final class ChunkedWorld {
+    private static final int SURFACE_SHORTS = (int) (SM64Surface.BYTES / Short.BYTES);
+    private static final int VERTICES = 3;
+    
+    /**
+     * A surface set that is ready to be loaded.
+     *
+     * @param chunks The chunks in the set
+     * @param session The session of the surfaces, null if the chunks are empty
+     * @param surfaces The surfaces
+     */
+    private record Prepared(Set<Long> chunks, MemorySession session, SM64Surface.Buffer surfaces) {}
+    
+    /**
+     * Loaded when no chunk has any surfaces so the surfaces of the previous set are dropped, libsm64 never reads the
+     * pointer when the count is 0.
+     */
+    private static final SM64Surface.Buffer EMPTY = new SM64Surface.Buffer(0, MemoryAddress.NULL);
+    
+    private final short[] level;
+    private final Map<Long, int[]> chunks;
+    private final int surfaceCount;
+    private final int chunkSize;
+    private final int loadRadius;
+    private final Consumer<SM64Surface.Buffer> loader;
+    private final Executor executor;
+    
+    private final Map<Integer, long[]> marios = new HashMap<>();
+    private boolean dirty;
+    
+    private Set<Long> resident = Set.of();
+    private Set<Long> pendingChunks;
+    private CompletableFuture<Prepared> pending;
+    
+    /**
+     * Creates a chunked world that loads into the shared libsm64 instance on the common pool.
+     *
+     * @param level The surfaces of the whole level, they are copied
+     * @param chunkSize The width of a chunk
+     * @param loadRadius How many chunks around a Mario are loaded
+     */
+    public ChunkedWorld(SM64Surface.Buffer level, int chunkSize, int loadRadius) {
+        this(level, chunkSize, loadRadius, LibSM64::sm64_static_surfaces_load, ForkJoinPool.commonPool());
+    }
+    
+    /**
+     * Creates a chunked world.
+     *
+     * @param level The surfaces of the whole level, they are copied
+     * @param chunkSize The width of a chunk
+     * @param loadRadius How many chunks around a Mario are loaded
+     * @param loader Loads a set of static surfaces, usually sm64_static_surfaces_load of a world
+     * @param executor The executor the surface sets are built on
+     */
+    public ChunkedWorld(SM64Surface.Buffer level, int chunkSize, int loadRadius, Consumer<SM64Surface.Buffer> loader, Executor executor) {
+        Objects.requireNonNull(level, "level can't be null");
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize must be greater than 0");
+        }
+        if (loadRadius < 0) {
+            throw new IllegalArgumentException("loadRadius can't be negative");
+        }
+        this.chunkSize = chunkSize;
+        this.loadRadius = loadRadius;
+        this.loader = Objects.requireNonNull(loader, "loader can't be null");
+        this.executor = Objects.requireNonNull(executor, "executor can't be null");
+        
+        surfaceCount = Math.toIntExact(level.size());
+        this.level = new short[Math.multiplyExact(surfaceCount, SURFACE_SHORTS)];
+        MemorySegment.copy(level.segment(), ValueLayout.JAVA_SHORT, 0, this.level, 0, this.level.length);
+        chunks = index();
+    }
+    
+    /**
+     * Assigns every surface to every chunk its bounding box overlaps.
+     */
+    private Map<Long, int[]> index() {
+        var lists = new HashMap<Long, int[]>();
+        var sizes = new HashMap<Long, Integer>();
+        for (int surface = 0; surface < surfaceCount; surface++) {
+            var base = surface * SURFACE_SHORTS + VERTICES;
+            int minX = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE, minZ = Integer.MAX_VALUE, maxZ = Integer.MIN_VALUE;
+            for (int corner = 0; corner < 3; corner++) {
+                int x = level[base + corner * 3], z = level[base + corner * 3 + 2];
+                minX = Math.min(minX, x);
+                maxX = Math.max(maxX, x);
+                minZ = Math.min(minZ, z);
+                maxZ = Math.max(maxZ, z);
+            }
+            
+            for (int chunkX = Math.floorDiv(minX, chunkSize); chunkX <= Math.floorDiv(maxX, chunkSize); chunkX++) {
+                for (int chunkZ = Math.floorDiv(minZ, chunkSize); chunkZ <= Math.floorDiv(maxZ, chunkSize); chunkZ++) {
+                    var key = key(chunkX, chunkZ);
+                    var size = sizes.getOrDefault(key, 0);
+                    var list = lists.computeIfAbsent(key, (k) -> new int[8]);
+                    if (size == list.length) {
+                        list = Arrays.copyOf(list, size * 2);
+                        lists.put(key, list);
+                    }
+                    list[size] = surface;
+                    sizes.put(key, size + 1);
+                }
+            }
+        }
+        
+        lists.replaceAll((key, list) -> Arrays.copyOf(list, sizes.get(key)));
+        return lists;
+    }
+    
+    /**
+     * Updates the position of a Mario.
+     *
+     * @param marioId The id of the Mario
+     * @param x The X position
+     * @param z The Z position
+     */
+    public void track(int marioId, float x, float z) {
+        var chunkX = Math.floorDiv((long) Math.floor(x), chunkSize);
+        var chunkZ = Math.floorDiv((long) Math.floor(z), chunkSize);
+        var chunk = marios.get(marioId);
+        if (chunk == null) {
+            marios.put(marioId, new long[] {chunkX, chunkZ});
+            dirty = true;
+        } else if (chunk[0] != chunkX || chunk[1] != chunkZ) {
+            chunk[0] = chunkX;
+            chunk[1] = chunkZ;
+            dirty = true;
+        }
+    }
+    
+    /**
+     * Updates the position of a Mario from its state.
+     *
+     * @param marioId The id of the Mario
+     * @param state The state of the Mario
+     */
+    public void track(int marioId, SM64MarioState state) {
+        track(marioId, state.positionX(), state.positionZ());
+    }
+    
+    /**
+     * Stops tracking a Mario.
+     *
+     * @param marioId The id of the Mario
+     */
+    public void untrack(int marioId) {
+        if (marios.remove(marioId) != null) {
+            dirty = true;
+        }
+    }
+    
+    /**
+     * Loads a finished surface set and starts building a new one if the required chunks changed. Call this once per
+     * tick before ticking the Marios. The first set is built and loaded immediately so Marios never start without
+     * ground.
+     *
+     * @return True if a new surface set was loaded
+     */
+    public boolean update() {
+        boolean loaded = false;
+        if (pending != null && pending.isDone()) {
+            var prepared = pending.join();
+            pending = null;
+            pendingChunks = null;
+            load(prepared);
+            loaded = true;
+        }
+        
+        if (!dirty) {
+            return loaded;
+        }
+        dirty = false;
+        
+        var desired = desiredChunks();
+        if (desired.equals(resident) || desired.equals(pendingChunks)) {
+            return loaded;
+        }
+        
+        if (pending != null) {
+            // Superseded, throw the result away once it is done
+            pending.thenAccept((prepared) -> {
+                if (prepared.session() != null) {
+                    prepared.session().close();
+                }
+            });
+        }
+        
+        if (resident.isEmpty() && !desired.isEmpty()) {
+            pending = null;
+            pendingChunks = null;
+            load(prepare(desired));
+            return true;
+        }
+        
+        pendingChunks = desired;
+        pending = CompletableFuture.supplyAsync(() -> prepare(desired), executor);
+        return loaded;
+    }
+    
+    /**
+     * Gets the chunks that are currently loaded.
+     *
+     * @return The loaded chunks, as packed X/Z keys
+     */
+    public Set<Long> residentChunks() {
+        return resident;
+    }
+    
+    private Set<Long> desiredChunks() {
+        var desired = new HashSet<Long>();
+        for (var chunk : marios.values()) {
+            for (long x = chunk[0] - loadRadius; x <= chunk[0] + loadRadius; x++) {
+                for (long z = chunk[1] - loadRadius; z <= chunk[1] + loadRadius; z++) {
+                    desired.add(key(x, z));
+                }
+            }
+        }
+        
+        // Keep chunks a little longer than required so moving along a border does not thrash
+        var keepRadius = loadRadius + 1;
+        for (var key : resident) {
+            long x = key >> 32;
+            long z = (int) (long) key;
+            for (var chunk : marios.values()) {
+                if (Math.abs(chunk[0] - x) <= keepRadius && Math.abs(chunk[1] - z) <= keepRadius) {
+                    desired.add(key);
+                    break;
+                }
+            }
+        }
+        return desired;
+    }
+    
+    private Prepared prepare(Set<Long> chunkSet) {
+        // A surface can be in many chunks, only load it once
+        var selected = new BitSet(surfaceCount);
+        for (var key : chunkSet) {
+            var surfaces = chunks.get(key);
+            if (surfaces != null) {
+                for (var surface : surfaces) {
+                    selected.set(surface);
+                }
+            }
+        }
+        
+        var count = selected.cardinality();
+        if (count == 0) {
+            return new Prepared(chunkSet, null, EMPTY);
+        }
+        
+        var session = MemorySession.openShared();
+        var buffer = SM64Surface.buffer(count, session);
+        var segment = buffer.segment();
+        long offset = 0;
+        for (int surface = selected.nextSetBit(0); surface >= 0; surface = selected.nextSetBit(surface + 1)) {
+            MemorySegment.copy(level, surface * SURFACE_SHORTS, segment, ValueLayout.JAVA_SHORT, offset, SURFACE_SHORTS);
+            offset += SM64Surface.BYTES;
+        }
+        return new Prepared(chunkSet, session, buffer);
+    }
+    
+    private void load(Prepared prepared) {
+        try {
+            // libsm64 copies the surfaces, they can be freed right away
+            loader.accept(prepared.surfaces());
+            resident = prepared.chunks();
+        } finally {
+            if (prepared.session() != null) {
+                prepared.session().close();
+            }
+        }
+    }
+    
+    private static long key(long x, long z) {
+        return (x << 32) | (z & 0xFFFF_FFFFL);
+    }
+}
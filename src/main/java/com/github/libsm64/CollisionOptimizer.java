@@ -0,0 +1,453 @@
+package com.github.libsm64;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SegmentAllocator;
+import java.lang.foreign.ValueLayout;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Objects;
+
+/**
+ * Reduces the amount of surfaces of a collision mesh before it is loaded into libsm64. The optimiser welds nearby
+ * vertices, drops triangles that have no area or are exact duplicates and merges pairs of neighbouring triangles into a
+ * single triangle where their union is a triangle. Only surfaces with the same type, force and terrain are merged.
+ */
+public final class CollisionOptimizer {
+    private CollisionOptimizer() {
+        throw new AssertionError();
+    }
+    
+    /**
+     * The result of an optimisation.
+     *
+     * @param surfaces The optimised surfaces
+     * @param weldedVertices The amount of vertices that were moved onto another vertex
+     * @param degenerate The amount of surfaces that were removed because they had no area
+     * @param duplicates The amount of surfaces that were removed because they were duplicates
+     * @param merged The amount of surfaces that were removed by merging them into a neighbour
+     */
+    public record Result(SM64Surface.Buffer surfaces, long weldedVertices, long degenerate, long duplicates, long merged) {
+        /**
+         * Gets the total amount of removed surfaces.
+         *
+         * @return The amount of removed surfaces
+         */
+        public long removed() {
+            return degenerate + duplicates + merged;
+        }
+    }
+    
+    private static final int SURFACE_SHORTS = (int) (SM64Surface.BYTES / Short.BYTES);
+    private static final int TYPE = 0;
+    private static final int FORCE = 1;
+    private static final int TERRAIN = 2;
+    private static final int VERTICES = 3;
+    
+    /**
+     * Optimises a set of surfaces, the input is not modified.
+     *
+     * @param surfaces The surfaces to optimise
+     * @param weldDistance Vertices this close on every axis are welded together, 0 only welds identical vertices
+     * @param allocator The allocator of the optimised buffer
+     * @return The optimised surfaces and statistics
+     */
+    public static Result optimize(SM64Surface.Buffer surfaces, int weldDistance, SegmentAllocator allocator) {
+        Objects.requireNonNull(surfaces, "surfaces can't be null");
+        Objects.requireNonNull(allocator, "allocator can't be null");
+        if (weldDistance < 0) {
+            throw new IllegalArgumentException("weldDistance can't be negative");
+        }
+        if (surfaces.size() > Integer.MAX_VALUE / SURFACE_SHORTS) {
+            throw new IllegalArgumentException("Too many surfaces");
+        }
+        
+        var count = (int) surfaces.size();
+        var data = new short[count * SURFACE_SHORTS];
+        MemorySegment.copy(surfaces.segment(), ValueLayout.JAVA_SHORT, 0, data, 0, data.length);
+        
+        // Weld, every corner becomes an index into the vertex table
+        var welder = new Welder(weldDistance, count * 3);
+        var triangles = new int[count * 3];
+        for (int i = 0; i < count; i++) {
+            for (int corner = 0; corner < 3; corner++) {
+                var offset = i * SURFACE_SHORTS + VERTICES + corner * 3;
+                triangles[i * 3 + corner] = welder.weld(data[offset], data[offset + 1], data[offset + 2]);
+            }
+        }
+        
+        // Drop degenerate and duplicate triangles
+        var alive = new boolean[count];
+        var seen = new HashSet<TriangleKey>();
+        long degenerate = 0;
+        long duplicates = 0;
+        for (int i = 0; i < count; i++) {
+            int a = triangles[i * 3], b = triangles[i * 3 + 1], c = triangles[i * 3 + 2];
+            if (a == b || b == c || c == a || welder.collinear(a, b, c)) {
+                degenerate++;
+            } else if (!seen.add(TriangleKey.of(a, b, c, data, i))) {
+                duplicates++;
+            } else {
+                alive[i] = true;
+            }
+        }
+        
+        var merged = merge(data, triangles, alive, welder);
+        
+        // Write out what is left
+        int remaining = 0;
+        for (var value : alive) {
+            if (value) {
+                remaining++;
+            }
+        }
+        var output = new short[remaining * SURFACE_SHORTS];
+        int written = 0;
+        for (int i = 0; i < count; i++) {
+            if (!alive[i]) {
+                continue;
+            }
+            var base = written * SURFACE_SHORTS;
+            System.arraycopy(data, i * SURFACE_SHORTS, output, base, VERTICES);
+            for (int corner = 0; corner < 3; corner++) {
+                welder.copy(triangles[i * 3 + corner], output, base + VERTICES + corner * 3);
+            }
+            written++;
+        }
+        
+        var buffer = SM64Surface.buffer(Math.max(remaining, 1), allocator);
+        MemorySegment.copy(output, 0, buffer.segment(), ValueLayout.JAVA_SHORT, 0, output.length);
+        if (remaining == 0) {
+            // An empty buffer can't be allocated, hand back a buffer that views nothing
+            buffer = new SM64Surface.Buffer(buffer.segment().asSlice(0, 0));
+        }
+        return new Result(buffer, welder.welded, degenerate, duplicates, merged);
+    }
+    
+    /**
+     * Merges neighbouring triangles (P, Q, R) and (P, R, S) into (P, Q, S) when R lies on the segment between Q and S.
+     * Both triangles then lie in the same plane and their union is exactly the merged triangle.
+     */
+    private static long merge(short[] data, int[] triangles, boolean[] alive, Welder welder) {
+        var edges = new LongIntMap(alive.length * 3);
+        for (int i = 0; i < alive.length; i++) {
+            if (alive[i]) {
+                addEdges(edges, triangles, i);
+            }
+        }
+        
+        var queue = new ArrayDeque<Integer>();
+        for (int i = 0; i < alive.length; i++) {
+            if (alive[i]) {
+                queue.add(i);
+            }
+        }
+        
+        long merged = 0;
+        while (!queue.isEmpty()) {
+            int first = queue.poll();
+            if (!alive[first]) {
+                continue;
+            }
+            
+            for (int corner = 0; corner < 3; corner++) {
+                var p = triangles[first * 3 + corner];
+                var q = triangles[first * 3 + (corner + 1) % 3];
+                var r = triangles[first * 3 + (corner + 2) % 3];
+                
+                // The neighbour walks the shared edge the other way around, P to R
+                var second = edges.get(edge(p, r));
+                if (second < 0 || second == first || !alive[second] || !sameAttributes(data, first, second)) {
+                    continue;
+                }
+                var s = third(triangles, second, p, r);
+                if (s < 0 || s == q || !welder.between(q, r, s)) {
+                    continue;
+                }
+                
+                removeEdges(edges, triangles, first);
+                removeEdges(edges, triangles, second);
+                alive[second] = false;
+                triangles[first * 3] = p;
+                triangles[first * 3 + 1] = q;
+                triangles[first * 3 + 2] = s;
+                addEdges(edges, triangles, first);
+                merged++;
+                
+                queue.add(first);
+                break;
+            }
+        }
+        return merged;
+    }
+    
+    /**
+     * Finds the corner of a triangle that follows the directed edge from to to, or -1 if the triangle has no such edge.
+     */
+    private static int third(int[] triangles, int triangle, int from, int to) {
+        for (int corner = 0; corner < 3; corner++) {
+            if (triangles[triangle * 3 + corner] == from && triangles[triangle * 3 + (corner + 1) % 3] == to) {
+                return triangles[triangle * 3 + (corner + 2) % 3];
+            }
+        }
+        return -1;
+    }
+    
+    private static boolean sameAttributes(short[] data, int first, int second) {
+        return Arrays.equals(
+            data, first * SURFACE_SHORTS, first * SURFACE_SHORTS + VERTICES,
+            data, second * SURFACE_SHORTS, second * SURFACE_SHORTS + VERTICES
+        );
+    }
+    
+    private static long edge(int from, int to) {
+        return ((long) from << 32) | Integer.toUnsignedLong(to);
+    }
+    
+    private static void addEdges(LongIntMap edges, int[] triangles, int triangle) {
+        for (int corner = 0; corner < 3; corner++) {
+            edges.putIfAbsent(edge(triangles[triangle * 3 + corner], triangles[triangle * 3 + (corner + 1) % 3]), triangle);
+        }
+    }
+    
+    private static void removeEdges(LongIntMap edges, int[] triangles, int triangle) {
+        for (int corner = 0; corner < 3; corner++) {
+            edges.remove(edge(triangles[triangle * 3 + corner], triangles[triangle * 3 + (corner + 1) % 3]), triangle);
+        }
+    }
+    
+    /**
+     * Identifies a triangle independent of which corner it starts at, the winding and attributes are part of the key.
+     */
+    private record TriangleKey(int a, int b, int c, short type, short force, short terrain) {
+        static TriangleKey of(int a, int b, int c, short[] data, int triangle) {
+            var base = triangle * SURFACE_SHORTS;
+            var type = data[base + TYPE];
+            var force = data[base + FORCE];
+            var terrain = data[base + TERRAIN];
+            if (a < b && a < c) {
+                return new TriangleKey(a, b, c, type, force, terrain);
+            } else if (b < c) {
+                return new TriangleKey(b, c, a, type, force, terrain);
+            } else {
+                return new TriangleKey(c, a, b, type, force, terrain);
+            }
+        }
+    }
+    
+    /**
+     * Deduplicates vertices. Every vertex is snapped onto the first vertex that was seen within the weld distance.
+     */
+    private static final class Welder {
+        private final int distance;
+        private final int cellSize;
+        private final LongIntMap ids;
+        private final LongIntMap cells;
+        private int[] next;
+        private short[] positions;
+        private int count;
+        private long welded;
+        
+        Welder(int distance, int capacity) {
+            this.distance = distance;
+            cellSize = distance + 1;
+            ids = new LongIntMap(capacity);
+            cells = new LongIntMap(capacity);
+            next = new int[Math.max(capacity, 16)];
+            positions = new short[Math.max(capacity, 16) * 3];
+        }
+        
+        int weld(short x, short y, short z) {
+            var key = key(x, y, z);
+            var id = ids.get(key);
+            if (id >= 0) {
+                return id;
+            }
+            
+            // Look for a close vertex in the surrounding cells
+            if (distance > 0) {
+                int cellX = Math.floorDiv(x, cellSize), cellY = Math.floorDiv(y, cellSize), cellZ = Math.floorDiv(z, cellSize);
+                for (int dx = -1; dx <= 1; dx++) {
+                    for (int dy = -1; dy <= 1; dy++) {
+                        for (int dz = -1; dz <= 1; dz++) {
+                            for (int other = cells.get(key(cellX + dx, cellY + dy, cellZ + dz)); other >= 0; other = next[other]) {
+                                if (
+                                    Math.abs(positions[other * 3] - x) <= distance &&
+                                    Math.abs(positions[other * 3 + 1] - y) <= distance &&
+                                    Math.abs(positions[other * 3 + 2] - z) <= distance
+                                ) {
+                                    welded++;
+                                    ids.putIfAbsent(key, other);
+                                    return other;
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+            
+            id = count++;
+            if (id == next.length) {
+                next = Arrays.copyOf(next, id * 2);
+                positions = Arrays.copyOf(positions, id * 6);
+            }
+            positions[id * 3] = x;
+            positions[id * 3 + 1] = y;
+            positions[id * 3 + 2] = z;
+            ids.putIfAbsent(key, id);
+            if (distance > 0) {
+                var cell = key(Math.floorDiv(x, cellSize), Math.floorDiv(y, cellSize), Math.floorDiv(z, cellSize));
+                next[id] = cells.get(cell);
+                cells.put(cell, id);
+            }
+            return id;
+        }
+        
+        void copy(int id, short[] destination, int offset) {
+            System.arraycopy(positions, id * 3, destination, offset, 3);
+        }
+        
+        /**
+         * Checks if three vertices lie on one line, such a triangle has no area.
+         */
+        boolean collinear(int a, int b, int c) {
+            long abX = positions[b * 3] - positions[a * 3];
+            long abY = positions[b * 3 + 1] - positions[a * 3 + 1];
+            long abZ = positions[b * 3 + 2] - positions[a * 3 + 2];
+            long acX = positions[c * 3] - positions[a * 3];
+            long acY = positions[c * 3 + 1] - positions[a * 3 + 1];
+            long acZ = positions[c * 3 + 2] - positions[a * 3 + 2];
+            return abY * acZ - abZ * acY == 0 && abZ * acX - abX * acZ == 0 && abX * acY - abY * acX == 0;
+        }
+        
+        /**
+         * Checks if the vertex b lies strictly between the vertices a and c.
+         */
+        boolean between(int a, int b, int c) {
+            if (!collinear(a, b, c)) {
+                return false;
+            }
+            long abX = positions[b * 3] - positions[a * 3];
+            long abY = positions[b * 3 + 1] - positions[a * 3 + 1];
+            long abZ = positions[b * 3 + 2] - positions[a * 3 + 2];
+            long acX = positions[c * 3] - positions[a * 3];
+            long acY = positions[c * 3 + 1] - positions[a * 3 + 1];
+            long acZ = positions[c * 3 + 2] - positions[a * 3 + 2];
+            long dot = abX * acX + abY * acY + abZ * acZ;
+            return dot > 0 && dot < acX * acX + acY * acY + acZ * acZ;
+        }
+        
+        private static long key(long x, long y, long z) {
+            return ((x & 0x1F_FFFF) << 42) | ((y & 0x1F_FFFF) << 21) | (z & 0x1F_FFFF);
+        }
+    }
+    
+    /**
+     * A minimal open addressing map from long keys to non-negative int values, avoids boxing millions of keys.
+     */
+    private static final class LongIntMap {
+        private static final int EMPTY = -1;
+        private static final int REMOVED = -2;
+        
+        private long[] keys;
+        private int[] values;
+        private int size;
+        private int used;
+        
+        LongIntMap(int expected) {
+            var capacity = Integer.highestOneBit(Math.max(expected, 8) * 2 - 1) << 1;
+            keys = new long[capacity];
+            values = new int[capacity];
+            Arrays.fill(values, EMPTY);
+        }
+        
+        int get(long key) {
+            var mask = keys.length - 1;
+            for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+                var value = values[slot];
+                if (value == EMPTY) {
+                    return -1;
+                }
+                if (value != REMOVED && keys[slot] == key) {
+                    return value;
+                }
+            }
+        }
+        
+        void putIfAbsent(long key, int value) {
+            if (get(key) < 0) {
+                put(key, value);
+            }
+        }
+        
+        void put(long key, int value) {
+            var mask = keys.length - 1;
+            int free = -1;
+            for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+                var current = values[slot];
+                if (current == EMPTY) {
+                    if (free < 0) {
+                        free = slot;
+                        used++;
+                    }
+                    break;
+                }
+                if (current == REMOVED) {
+                    if (free < 0) {
+                        free = slot;
+                    }
+                } else if (keys[slot] == key) {
+                    values[slot] = value;
+                    return;
+                }
+            }
+            keys[free] = key;
+            values[free] = value;
+            size++;
+            if (used * 2 > keys.length) {
+                rehash();
+            }
+        }
+        
+        /**
+         * Removes a key if it maps to the provided value.
+         */
+        void remove(long key, int value) {
+            var mask = keys.length - 1;
+            for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+                var current = values[slot];
+                if (current == EMPTY) {
+                    return;
+                }
+                if (current != REMOVED && keys[slot] == key) {
+                    if (current == value) {
+                        values[slot] = REMOVED;
+                        size--;
+                    }
+                    return;
+                }
+            }
+        }
+        
+        private void rehash() {
+            var oldKeys = keys;
+            var oldValues = values;
+            var capacity = Integer.highestOneBit(Math.max(size, 4) * 4 - 1) << 1;
+            keys = new long[capacity];
+            values = new int[capacity];
+            Arrays.fill(values, EMPTY);
+            size = 0;
+            used = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldValues[i] >= 0) {
+                    put(oldKeys[i], oldValues[i]);
+                }
+            }
+        }
+        
+        private static int hash(long key) {
+            key *= 0x9E3779B97F4A7C15L;
+            return (int) (key ^ (key >>> 32));
+        }
+    }
+}
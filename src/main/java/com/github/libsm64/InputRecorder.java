@@ -0,0 +1,183 @@
+package com.github.libsm64;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.Objects;
+import java.util.zip.CRC32;
+
+/**
+ * Records the inputs of a single Mario into a compact stream that {@link InputReplayer InputReplayer} can play back.
+ * <p>
+ * The stream starts with a header holding the spawn position and the checksum interval. Every frame is a flag byte
+ * that holds the buttons and which analog values changed, followed by the zigzag varint encoded difference between
+ * the raw bits of each changed value and its previous value. Every checksum interval frames the CRC32 of the
+ * {@link SM64MarioState SM64MarioState} after the tick is appended, so a replay can find the first frame that
+ * diverged. A frame where nothing changed takes a single byte.
+ */
+public final class InputRecorder implements AutoCloseable {
+    static final int MAGIC = 0x54504E49; // INPT
+    static final int VERSION = 1;
+    
+    static final int FLAG_CAM_LOOK_X = 1;
+    static final int FLAG_CAM_LOOK_Y = 1 << 1;
+    static final int FLAG_STICK_X = 1 << 2;
+    static final int FLAG_STICK_Y = 1 << 3;
+    static final int FLAG_BUTTON_A = 1 << 4;
+    static final int FLAG_BUTTON_B = 1 << 5;
+    static final int FLAG_BUTTON_Z = 1 << 6;
+    static final int FLAG_CHECKSUM = 1 << 7;
+    
+    private final OutputStream output;
+    private final int checksumInterval;
+    private final CRC32 crc = new CRC32();
+    private final byte[] state = new byte[(int) SM64MarioState.BYTES];
+    
+    private int camLookX;
+    private int camLookY;
+    private int stickX;
+    private int stickY;
+    private long frames;
+    
+    /**
+     * Creates a recorder and writes the header.
+     *
+     * @param output The stream to write to, it is closed with the recorder
+     * @param x The X spawn position passed to sm64_mario_create
+     * @param y The Y spawn position passed to sm64_mario_create
+     * @param z The Z spawn position passed to sm64_mario_create
+     * @param checksumInterval How many frames there are between state checksums
+     * @throws IOException If the header could not be written
+     */
+    public InputRecorder(OutputStream output, short x, short y, short z, int checksumInterval) throws IOException {
+        Objects.requireNonNull(output, "output can't be null");
+        if (checksumInterval <= 0) {
+            throw new IllegalArgumentException("checksumInterval must be greater than 0");
+        }
+        this.output = new BufferedOutputStream(output, 1 << 16);
+        this.checksumInterval = checksumInterval;
+        
+        writeInt(MAGIC);
+        writeVarInt(VERSION);
+        writeVarInt(zigzag(x));
+        writeVarInt(zigzag(y));
+        writeVarInt(zigzag(z));
+        writeVarInt(checksumInterval);
+    }
+    
+    /**
+     * Records a frame, call this after every sm64_mario_tick.
+     *
+     * @param inputs The inputs passed to the tick
+     * @param state The state written by the tick
+     * @throws IOException If the frame could not be written
+     */
+    public void record(SM64MarioInputs inputs, SM64MarioState state) throws IOException {
+        var newCamLookX = Float.floatToRawIntBits(inputs.camLookX());
+        var newCamLookY = Float.floatToRawIntBits(inputs.camLookY());
+        var newStickX = Float.floatToRawIntBits(inputs.stickX());
+        var newStickY = Float.floatToRawIntBits(inputs.stickY());
+        
+        int flags = 0;
+        if (newCamLookX != camLookX) {
+            flags |= FLAG_CAM_LOOK_X;
+        }
+        if (newCamLookY != camLookY) {
+            flags |= FLAG_CAM_LOOK_Y;
+        }
+        if (newStickX != stickX) {
+            flags |= FLAG_STICK_X;
+        }
+        if (newStickY != stickY) {
+            flags |= FLAG_STICK_Y;
+        }
+        if (inputs.buttonA()) {
+            flags |= FLAG_BUTTON_A;
+        }
+        if (inputs.buttonB()) {
+            flags |= FLAG_BUTTON_B;
+        }
+        if (inputs.buttonZ()) {
+            flags |= FLAG_BUTTON_Z;
+        }
+        var checksum = ++frames % checksumInterval == 0;
+        if (checksum) {
+            flags |= FLAG_CHECKSUM;
+        }
+        
+        output.write(flags);
+        if ((flags & FLAG_CAM_LOOK_X) != 0) {
+            writeVarInt(zigzag(newCamLookX - camLookX));
+            camLookX = newCamLookX;
+        }
+        if ((flags & FLAG_CAM_LOOK_Y) != 0) {
+            writeVarInt(zigzag(newCamLookY - camLookY));
+            camLookY = newCamLookY;
+        }
+        if ((flags & FLAG_STICK_X) != 0) {
+            writeVarInt(zigzag(newStickX - stickX));
+            stickX = newStickX;
+        }
+        if ((flags & FLAG_STICK_Y) != 0) {
+            writeVarInt(zigzag(newStickY - stickY));
+            stickY = newStickY;
+        }
+        if (checksum) {
+            writeInt(checksum(crc, this.state, state));
+        }
+    }
+    
+    /**
+     * Gets the amount of recorded frames.
+     *
+     * @return The amount of frames
+     */
+    public long frames() {
+        return frames;
+    }
+    
+    /**
+     * Flushes and closes the stream.
+     *
+     * @throws IOException If the stream could not be closed
+     */
+    @Override
+    public void close() throws IOException {
+        output.close();
+    }
+    
+    /**
+     * Calculates the checksum of a state without allocating.
+     */
+    static int checksum(CRC32 crc, byte[] scratch, SM64MarioState state) {
+        MemorySegment.copy(state.segment(), ValueLayout.JAVA_BYTE, 0, scratch, 0, scratch.length);
+        crc.reset();
+        crc.update(scratch);
+        return (int) crc.getValue();
+    }
+    
+    static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+    
+    static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+    
+    private void writeVarInt(int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            output.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        output.write(value);
+    }
+    
+    private void writeInt(int value) throws IOException {
+        output.write(value >>> 24);
+        output.write(value >>> 16);
+        output.write(value >>> 8);
+        output.write(value);
+    }
+}
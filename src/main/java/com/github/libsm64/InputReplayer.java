@@ -0,0 +1,174 @@
+package com.github.libsm64;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.foreign.MemorySession;
+import java.util.Objects;
+import java.util.zip.CRC32;
+
+import static com.github.libsm64.InputRecorder.*;
+
+/**
+ * Plays back a stream written by {@link InputRecorder InputRecorder} as fast as possible, without any frame pacing.
+ * libsm64 must already be initialized with the same ROM and static surfaces as the recording.
+ */
+public final class InputReplayer {
+    private InputReplayer() {
+        throw new AssertionError();
+    }
+    
+    /**
+     * The outcome of a replay.
+     *
+     * @param frames The amount of frames that were replayed
+     * @param nanos The time the replay took
+     * @param checksums The amount of checksums that were compared
+     * @param firstDivergentFrame The first frame whose checksum did not match, or -1 if they all did. The actual
+     * divergence happened somewhere after the previous checksum.
+     */
+    public record Result(long frames, long nanos, long checksums, long firstDivergentFrame) {
+        /**
+         * Checks if every checksum matched.
+         *
+         * @return True if the replay matched the recording
+         */
+        public boolean matched() {
+            return firstDivergentFrame < 0;
+        }
+        
+        /**
+         * Gets the replay speed.
+         *
+         * @return The amount of ticks per second
+         */
+        public double ticksPerSecond() {
+            return nanos == 0 ? 0 : frames * 1e9 / nanos;
+        }
+    }
+    
+    /**
+     * Replays a recording in the shared libsm64 instance.
+     *
+     * @param input The recording
+     * @return The outcome of the replay
+     * @throws IOException If the recording could not be read or is invalid
+     */
+    public static Result replay(InputStream input) throws IOException {
+        return replay(input, SM64World.global(), false);
+    }
+    
+    /**
+     * Replays a recording. A Mario is created at the recorded spawn position and deleted afterwards.
+     *
+     * @param input The recording
+     * @param world The world to replay in
+     * @param stopAtDivergence True to stop at the first checksum that does not match
+     * @return The outcome of the replay
+     * @throws IOException If the recording could not be read or is invalid
+     */
+    public static Result replay(InputStream input, SM64World world, boolean stopAtDivergence) throws IOException {
+        Objects.requireNonNull(input, "input can't be null");
+        Objects.requireNonNull(world, "world can't be null");
+        
+        var stream = new BufferedInputStream(input, 1 << 16);
+        if (readInt(stream) != MAGIC) {
+            throw new IOException("Not an input recording");
+        }
+        var version = readVarInt(stream);
+        if (version != VERSION) {
+            throw new IOException("Unsupported input recording version " + version);
+        }
+        var x = (short) unzigzag(readVarInt(stream));
+        var y = (short) unzigzag(readVarInt(stream));
+        var z = (short) unzigzag(readVarInt(stream));
+        readVarInt(stream); // The checksum interval, the flags say where checksums are
+        
+        try (var session = MemorySession.openConfined()) {
+            var inputs = new SM64MarioInputs(session);
+            var state = new SM64MarioState(session);
+            var crc = new CRC32();
+            var scratch = new byte[(int) SM64MarioState.BYTES];
+            
+            int camLookX = 0, camLookY = 0, stickX = 0, stickY = 0;
+            long frames = 0;
+            long checksums = 0;
+            long firstDivergentFrame = -1;
+            
+            var marioId = world.sm64_mario_create(x, y, z);
+            if (marioId < 0) {
+                throw new IOException("Failed to spawn Mario at " + x + ", " + y + ", " + z);
+            }
+            var start = System.nanoTime();
+            try {
+                int flags;
+                while ((flags = stream.read()) != -1) {
+                    if ((flags & FLAG_CAM_LOOK_X) != 0) {
+                        camLookX += unzigzag(readVarInt(stream));
+                    }
+                    if ((flags & FLAG_CAM_LOOK_Y) != 0) {
+                        camLookY += unzigzag(readVarInt(stream));
+                    }
+                    if ((flags & FLAG_STICK_X) != 0) {
+                        stickX += unzigzag(readVarInt(stream));
+                    }
+                    if ((flags & FLAG_STICK_Y) != 0) {
+                        stickY += unzigzag(readVarInt(stream));
+                    }
+                    inputs.camLookX(Float.intBitsToFloat(camLookX))
+                        .camLookY(Float.intBitsToFloat(camLookY))
+                        .stickX(Float.intBitsToFloat(stickX))
+                        .stickY(Float.intBitsToFloat(stickY))
+                        .buttonA((flags & FLAG_BUTTON_A) != 0)
+                        .buttonB((flags & FLAG_BUTTON_B) != 0)
+                        .buttonZ((flags & FLAG_BUTTON_Z) != 0);
+                    
+                    world.sm64_mario_tick(marioId, inputs, state);
+                    frames++;
+                    
+                    if ((flags & FLAG_CHECKSUM) != 0) {
+                        var expected = readInt(stream);
+                        checksums++;
+                        if (firstDivergentFrame < 0 && checksum(crc, scratch, state) != expected) {
+                            firstDivergentFrame = frames;
+                            if (stopAtDivergence) {
+                                break;
+                            }
+                        }
+                    }
+                }
+            } finally {
+                world.sm64_mario_delete(marioId);
+            }
+            return new Result(frames, System.nanoTime() - start, checksums, firstDivergentFrame);
+        }
+    }
+    
+    private static int readVarInt(InputStream stream) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            var b = stream.read();
+            if (b == -1) {
+                throw new EOFException("Truncated input recording");
+            }
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint in input recording");
+    }
+    
+    private static int readInt(InputStream stream) throws IOException {
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            var b = stream.read();
+            if (b == -1) {
+                throw new EOFException("Truncated input recording");
+            }
+            value = (value << 8) | b;
+        }
+        return value;
+    }
+}
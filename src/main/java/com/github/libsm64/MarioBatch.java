@@ -0,0 +1,349 @@
+package com.github.libsm64;
+
+import com.github.libsm64.internal.Utils;
+
+import java.lang.foreign.*;
+import java.util.Objects;
+
+/**
+ * A set of Marios whose inputs, states and geometry buffer structs are stored in contiguous native arrays and are all
+ * ticked with a single call.
+ * <p>
+ * Removing a Mario moves the last Mario of the batch into the freed slot, so slots stay densely packed.
+ * <p>
+ * Marios that are added without geometry buffers share a single scratch buffer owned by the batch, for Marios that are
+ * never rendered.
+ */
+public final class MarioBatch {
+    private static final long STATE_POSITION_OFFSET = Utils.offset(SM64MarioState.LAYOUT, "position");
+    private static final long STATE_VELOCITY_OFFSET = Utils.offset(SM64MarioState.LAYOUT, "velocity");
+    private static final long INPUT_STICK_X_OFFSET = Utils.offset(SM64MarioInputs.LAYOUT, "stickX");
+    private static final long INPUT_STICK_Y_OFFSET = Utils.offset(SM64MarioInputs.LAYOUT, "stickY");
+    private static final long INPUT_BUTTON_A_OFFSET = Utils.offset(SM64MarioInputs.LAYOUT, "buttonA");
+    private static final long INPUT_BUTTON_B_OFFSET = Utils.offset(SM64MarioInputs.LAYOUT, "buttonB");
+    private static final long INPUT_BUTTON_Z_OFFSET = Utils.offset(SM64MarioInputs.LAYOUT, "buttonZ");
+    
+    /**
+     * Creates a new, empty batch in the {@link SM64World#global() global} world.
+     *
+     * @param capacity The maximum amount of Marios in the batch
+     * @param allocator The allocator for the native arrays
+     * @return The new batch
+     */
+    public static MarioBatch allocate(int capacity, SegmentAllocator allocator) {
+        return allocate(SM64World.global(), capacity, allocator);
+    }
+    
+    /**
+     * Creates a new, empty batch.
+     *
+     * @param world The world the Marios live in
+     * @param capacity The maximum amount of Marios in the batch
+     * @param allocator The allocator for the native arrays
+     * @return The new batch
+     */
+    public static MarioBatch allocate(SM64World world, int capacity, SegmentAllocator allocator) {
+        Objects.requireNonNull(world, "world can't be null");
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be greater than 0");
+        }
+        Objects.requireNonNull(allocator, "allocator can't be null");
+        
+        return new MarioBatch(world, capacity, allocator);
+    }
+    
+    /**
+     * The world the Marios of this batch live in.
+     */
+    private final SM64World world;
+    
+    /**
+     * The maximum amount of Marios in this batch.
+     */
+    private final int capacity;
+    
+    /**
+     * The {@link SM64MarioInputs SM64MarioInputs} array.
+     */
+    private final MemorySegment inputs;
+    
+    /**
+     * The {@link SM64MarioState SM64MarioState} array.
+     */
+    private final MemorySegment states;
+    
+    /**
+     * The {@link SM64MarioGeometryBuffers SM64MarioGeometryBuffers} array.
+     */
+    private final MemorySegment geometry;
+    
+    /**
+     * The precomputed addresses of every slot, these keep the tick loop free of allocations.
+     */
+    private final Addressable[] inputAddresses;
+    private final Addressable[] stateAddresses;
+    private final Addressable[] geometryAddresses;
+    
+    /**
+     * The libsm64 ids of the Marios in this batch.
+     */
+    private final int[] marioIds;
+    
+    /**
+     * The amount of Marios in this batch.
+     */
+    private int size;
+    
+    /**
+     * The allocator of this batch, used for the scratch geometry.
+     */
+    private final SegmentAllocator allocator;
+    
+    /**
+     * The geometry target of state only Marios, allocated on first use.
+     */
+    private SM64MarioGeometryBuffers scratch;
+    
+    private MarioBatch(SM64World world, int capacity, SegmentAllocator allocator) {
+        this.world = world;
+        this.capacity = capacity;
+        this.allocator = allocator;
+        
+        inputs = allocator.allocateArray(SM64MarioInputs.LAYOUT, capacity);
+        states = allocator.allocateArray(SM64MarioState.LAYOUT, capacity);
+        geometry = allocator.allocateArray(SM64MarioGeometryBuffers.LAYOUT, capacity);
+        
+        inputAddresses = new Addressable[capacity];
+        stateAddresses = new Addressable[capacity];
+        geometryAddresses = new Addressable[capacity];
+        for (int i = 0; i < capacity; i++) {
+            inputAddresses[i] = inputs.asSlice(SM64MarioInputs.BYTES * i, SM64MarioInputs.BYTES).address();
+            stateAddresses[i] = states.asSlice(SM64MarioState.BYTES * i, SM64MarioState.BYTES).address();
+            geometryAddresses[i] = geometry.asSlice(SM64MarioGeometryBuffers.BYTES * i, SM64MarioGeometryBuffers.BYTES).address();
+        }
+        
+        marioIds = new int[capacity];
+    }
+    
+    /**
+     * Creates a new Mario and adds it to the end of this batch.
+     *
+     * @param x The X coordinate of the spawn point
+     * @param y The Y coordinate of the spawn point
+     * @param z The Z coordinate of the spawn point
+     * @param buffers The geometry buffers that libsm64 will write the geometry of this Mario into
+     * @return The slot of the new Mario
+     * @throws IllegalStateException If the batch is full or libsm64 failed to create the Mario
+     */
+    public int add(short x, short y, short z, SM64MarioGeometryBuffers buffers) {
+        Objects.requireNonNull(buffers, "buffers can't be null");
+        if (size == capacity) {
+            throw new IllegalStateException("MarioBatch is full");
+        }
+        
+        var marioId = world.sm64_mario_create(x, y, z);
+        if (marioId < 0) {
+            throw new IllegalStateException("Failed to create Mario at " + x + ", " + y + ", " + z);
+        }
+        
+        var slot = size++;
+        marioIds[slot] = marioId;
+        inputs(slot).segment().fill((byte) 0);
+        state(slot).segment().fill((byte) 0);
+        geometry(slot).segment().copyFrom(buffers.segment().asSlice(0, SM64MarioGeometryBuffers.BYTES));
+        return slot;
+    }
+    
+    /**
+     * Creates a new state only Mario and adds it to the end of this batch. Its geometry is written into a scratch
+     * buffer shared by every state only Mario of this batch and can't be read.
+     *
+     * @param x The X coordinate of the spawn point
+     * @param y The Y coordinate of the spawn point
+     * @param z The Z coordinate of the spawn point
+     * @return The slot of the new Mario
+     * @throws IllegalStateException If the batch is full or libsm64 failed to create the Mario
+     */
+    public int add(short x, short y, short z) {
+        if (scratch == null) {
+            scratch = SM64MarioGeometryBuffers.scratch(allocator);
+        }
+        return add(x, y, z, scratch);
+    }
+    
+    /**
+     * Deletes the Mario in the provided slot. The last Mario of the batch is moved into the freed slot.
+     *
+     * @param slot The slot to remove
+     */
+    public void remove(int slot) {
+        Objects.checkIndex(slot, size);
+        
+        world.sm64_mario_delete(marioIds[slot]);
+        
+        var last = --size;
+        if (slot != last) {
+            marioIds[slot] = marioIds[last];
+            MemorySegment.copy(inputs, SM64MarioInputs.BYTES * last, inputs, SM64MarioInputs.BYTES * slot, SM64MarioInputs.BYTES);
+            MemorySegment.copy(states, SM64MarioState.BYTES * last, states, SM64MarioState.BYTES * slot, SM64MarioState.BYTES);
+            MemorySegment.copy(geometry, SM64MarioGeometryBuffers.BYTES * last, geometry, SM64MarioGeometryBuffers.BYTES * slot, SM64MarioGeometryBuffers.BYTES);
+        }
+    }
+    
+    /**
+     * Ticks every Mario in this batch once.
+     */
+    public void tick() {
+        var handle = world.marioTick();
+        var marioIds = this.marioIds;
+        var inputAddresses = this.inputAddresses;
+        var stateAddresses = this.stateAddresses;
+        var geometryAddresses = this.geometryAddresses;
+        
+        int i = 0;
+        try {
+            for (var size = this.size; i < size; i++) {
+                var start = SM64Metrics.ENABLED ? System.nanoTime() : 0;
+                handle.invokeExact(marioIds[i], inputAddresses[i], stateAddresses[i], geometryAddresses[i]);
+                if (SM64Metrics.ENABLED) {
+                    SM64Metrics.marioTick(start, marioIds[i]);
+                }
+            }
+        } catch (Throwable e) {
+            throw new RuntimeException("Failed to execute sm64_mario_tick for Mario " + marioIds[i], e);
+        }
+    }
+    
+    /**
+     * Ticks the Marios of this batch that a LOD policy selects for this frame, the others keep their last state.
+     *
+     * @param lod The LOD policy
+     * @param frame The current frame
+     * @return The amount of Marios that were ticked
+     */
+    public int tick(MarioLod lod, long frame) {
+        Objects.requireNonNull(lod, "lod can't be null");
+        
+        var handle = world.marioTick();
+        var marioIds = this.marioIds;
+        var inputAddresses = this.inputAddresses;
+        var stateAddresses = this.stateAddresses;
+        var geometryAddresses = this.geometryAddresses;
+        
+        int ticked = 0;
+        int i = 0;
+        try {
+            for (var size = this.size; i < size; i++) {
+                var state = SM64MarioState.BYTES * i + STATE_POSITION_OFFSET;
+                var velocity = SM64MarioState.BYTES * i + STATE_VELOCITY_OFFSET;
+                var input = SM64MarioInputs.BYTES * i;
+                var active = inputs.get(ValueLayout.JAVA_FLOAT, input + INPUT_STICK_X_OFFSET) != 0 ||
+                    inputs.get(ValueLayout.JAVA_FLOAT, input + INPUT_STICK_Y_OFFSET) != 0 ||
+                    inputs.get(ValueLayout.JAVA_BYTE, input + INPUT_BUTTON_A_OFFSET) != 0 ||
+                    inputs.get(ValueLayout.JAVA_BYTE, input + INPUT_BUTTON_B_OFFSET) != 0 ||
+                    inputs.get(ValueLayout.JAVA_BYTE, input + INPUT_BUTTON_Z_OFFSET) != 0;
+                var tick = lod.shouldTick(
+                    frame, marioIds[i],
+                    states.get(ValueLayout.JAVA_FLOAT, state),
+                    states.get(ValueLayout.JAVA_FLOAT, state + Float.BYTES),
+                    states.get(ValueLayout.JAVA_FLOAT, state + Float.BYTES * 2),
+                    states.get(ValueLayout.JAVA_FLOAT, velocity),
+                    states.get(ValueLayout.JAVA_FLOAT, velocity + Float.BYTES),
+                    states.get(ValueLayout.JAVA_FLOAT, velocity + Float.BYTES * 2),
+                    active
+                );
+                if (tick) {
+                    var start = SM64Metrics.ENABLED ? System.nanoTime() : 0;
+                    handle.invokeExact(marioIds[i], inputAddresses[i], stateAddresses[i], geometryAddresses[i]);
+                    if (SM64Metrics.ENABLED) {
+                        SM64Metrics.marioTick(start, marioIds[i]);
+                    }
+                    ticked++;
+                }
+            }
+        } catch (Throwable e) {
+            throw new RuntimeException("Failed to execute sm64_mario_tick for Mario " + marioIds[i], e);
+        }
+        return ticked;
+    }
+    
+    /**
+     * Gets the inputs of the Mario in the provided slot.
+     *
+     * @param slot The slot of the Mario
+     * @return A view of the inputs
+     */
+    public SM64MarioInputs inputs(int slot) {
+        Objects.checkIndex(slot, size);
+        return new SM64MarioInputs(inputs.asSlice(SM64MarioInputs.BYTES * slot, SM64MarioInputs.BYTES));
+    }
+    
+    /**
+     * Gets the state of the Mario in the provided slot.
+     *
+     * @param slot The slot of the Mario
+     * @return A view of the state
+     */
+    public SM64MarioState state(int slot) {
+        Objects.checkIndex(slot, size);
+        return new SM64MarioState(states.asSlice(SM64MarioState.BYTES * slot, SM64MarioState.BYTES));
+    }
+    
+    /**
+     * Gets the geometry buffers of the Mario in the provided slot.
+     *
+     * @param slot The slot of the Mario
+     * @return A view of the geometry buffers
+     */
+    public SM64MarioGeometryBuffers geometry(int slot) {
+        Objects.checkIndex(slot, size);
+        return new SM64MarioGeometryBuffers(geometry.asSlice(SM64MarioGeometryBuffers.BYTES * slot, SM64MarioGeometryBuffers.BYTES));
+    }
+    
+    /**
+     * Gets the inputs of every Mario in this batch as a single segment, useful for bulk updates.
+     *
+     * @return The {@link SM64MarioInputs SM64MarioInputs} array
+     */
+    public MemorySegment inputs() {
+        return inputs.asSlice(0, SM64MarioInputs.BYTES * size);
+    }
+    
+    /**
+     * Gets the states of every Mario in this batch as a single segment, useful for bulk reads.
+     *
+     * @return The {@link SM64MarioState SM64MarioState} array
+     */
+    public MemorySegment states() {
+        return states.asSlice(0, SM64MarioState.BYTES * size);
+    }
+    
+    /**
+     * Gets the libsm64 id of the Mario in the provided slot.
+     *
+     * @param slot The slot of the Mario
+     * @return The id of the Mario
+     */
+    public int marioId(int slot) {
+        Objects.checkIndex(slot, size);
+        return marioIds[slot];
+    }
+    
+    /**
+     * Gets the amount of Marios in this batch.
+     *
+     * @return The amount of Marios
+     */
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * Gets the maximum amount of Marios in this batch.
+     *
+     * @return The capacity
+     */
+    public int capacity() {
+        return capacity;
+    }
+}
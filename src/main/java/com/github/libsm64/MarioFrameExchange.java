@@ -0,0 +1,123 @@
+package com.github.libsm64;
+
+import java.lang.foreign.MemorySession;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A lock free triple buffer that hands the state and geometry of a Mario from the simulation thread to a render
+ * thread. The simulation ticks into the back frame and publishes it with a single atomic swap, the renderer always gets
+ * the latest published frame without waiting for the simulation and without ever seeing a half written frame.
+ * <p>
+ * Only one thread may produce and only one thread may consume frames.
+ */
+public final class MarioFrameExchange {
+    /**
+     * A single frame of a Mario.
+     *
+     * @param state The state of Mario
+     * @param buffers The geometry of Mario
+     */
+    public record Frame(SM64MarioState state, SM64MarioGeometryBuffers buffers) {}
+    
+    /**
+     * The bits of {@link #middle middle} that hold the index of the frame.
+     */
+    private static final int INDEX_MASK = 0b011;
+    
+    /**
+     * Set in {@link #middle middle} when it holds a frame the consumer has not seen yet.
+     */
+    private static final int DIRTY = 0b100;
+    
+    /**
+     * Allocates the three frames.
+     *
+     * @param session The session for the frames, must be shared between threads
+     * @return The new exchange
+     * @throws IllegalArgumentException If the session is confined to a thread
+     */
+    public static MarioFrameExchange allocate(MemorySession session) {
+        Objects.requireNonNull(session, "session can't be null");
+        if (session.ownerThread() != null) {
+            throw new IllegalArgumentException("session must be shared");
+        }
+        
+        var frames = new Frame[3];
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = new Frame(new SM64MarioState(session), SM64MarioGeometryBuffers.allocate(session));
+        }
+        return new MarioFrameExchange(frames);
+    }
+    
+    private final Frame[] frames;
+    
+    /**
+     * The frame that is handed between the two threads and the {@link #DIRTY DIRTY} flag.
+     */
+    private final AtomicInteger middle = new AtomicInteger(1);
+    
+    /**
+     * The frame owned by the producer.
+     */
+    private int back = 0;
+    
+    /**
+     * The frame owned by the consumer.
+     */
+    private int front = 2;
+    
+    private MarioFrameExchange(Frame[] frames) {
+        this.frames = frames;
+    }
+    
+    /**
+     * Gets the frame the producer should write the next tick into. Only call this from the producer thread.
+     *
+     * @return The back frame
+     */
+    public Frame back() {
+        return frames[back];
+    }
+    
+    /**
+     * Publishes the back frame to the consumer. Only call this from the producer thread.
+     */
+    public void publish() {
+        back = middle.getAndSet(back | DIRTY) & INDEX_MASK;
+    }
+    
+    /**
+     * Ticks a Mario into the back frame and publishes it. Only call this from the producer thread.
+     *
+     * @param marioId The Mario to tick
+     * @param inputs The inputs of the Mario
+     */
+    public void tick(int marioId, SM64MarioInputs inputs) {
+        var frame = back();
+        LibSM64.sm64_mario_tick(marioId, inputs, frame.state(), frame.buffers());
+        publish();
+    }
+    
+    /**
+     * Checks if a frame was published that the consumer has not acquired yet.
+     *
+     * @return True if {@link #latest() latest} would return a new frame
+     */
+    public boolean hasNewFrame() {
+        return (middle.get() & DIRTY) != 0;
+    }
+    
+    /**
+     * Gets the most recently published frame. The returned frame stays valid and unchanged until the next call of this
+     * method. Only call this from the consumer thread.
+     *
+     * @return The latest frame
+     */
+    public Frame latest() {
+        if (hasNewFrame()) {
+            front = middle.getAndSet(front) & INDEX_MASK;
+        }
+        return frames[front];
+    }
+}
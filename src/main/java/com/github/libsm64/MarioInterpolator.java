@@ -0,0 +1,180 @@
+package com.github.libsm64;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.Objects;
+
+/**
+ * Blends the two most recent ticks of a Mario so it can be rendered smoothly at a higher rate than the 30 Hz of
+ * libsm64. Push every tick with {@link #push(SM64MarioState, SM64MarioGeometryBuffers) push} and render with an alpha
+ * of how far the current frame is between the previous and the current tick.
+ * <p>
+ * The data is kept in plain arrays so the blending loops are simple enough for the JIT to vectorize.
+ */
+public final class MarioInterpolator {
+    private static final int POSITION_FLOATS = LibSM64.SM64_GEO_MAX_TRIANGLES * SM64MarioGeometryBuffers.POSITION_FLOATS_PER_TRIANGLE;
+    private static final float TAU = (float) (Math.PI * 2);
+    
+    private final float[] previousPosition = new float[3];
+    private final float[] currentPosition = new float[3];
+    private final float[] previousVelocity = new float[3];
+    private final float[] currentVelocity = new float[3];
+    private float previousFaceAngle;
+    private float currentFaceAngle;
+    
+    private float[] previousVertices = new float[POSITION_FLOATS];
+    private float[] currentVertices = new float[POSITION_FLOATS];
+    private int previousTriangles;
+    private int currentTriangles;
+    
+    /**
+     * Scratch space for writing blended vertices into native memory.
+     */
+    private final float[] blendedVertices = new float[POSITION_FLOATS];
+    
+    /**
+     * Set once the first tick was pushed.
+     */
+    private boolean primed;
+    
+    /**
+     * Pushes the result of a new tick, the current tick becomes the previous one.
+     *
+     * @param state The state of the new tick
+     * @param buffers The geometry of the new tick or null to only interpolate the state
+     */
+    public void push(SM64MarioState state, SM64MarioGeometryBuffers buffers) {
+        Objects.requireNonNull(state, "state can't be null");
+        
+        System.arraycopy(currentPosition, 0, previousPosition, 0, 3);
+        System.arraycopy(currentVelocity, 0, previousVelocity, 0, 3);
+        previousFaceAngle = currentFaceAngle;
+        state.position(currentPosition);
+        state.velocity(currentVelocity);
+        currentFaceAngle = state.faceAngle();
+        
+        var vertices = previousVertices;
+        previousVertices = currentVertices;
+        currentVertices = vertices;
+        previousTriangles = currentTriangles;
+        if (buffers != null) {
+            currentTriangles = buffers.numTrianglesUsed();
+            MemorySegment.copy(
+                buffers.positionData(), ValueLayout.JAVA_FLOAT, 0,
+                currentVertices, 0,
+                currentTriangles * SM64MarioGeometryBuffers.POSITION_FLOATS_PER_TRIANGLE
+            );
+        } else {
+            currentTriangles = 0;
+        }
+        
+        // Don't blend in from the origin on the first tick
+        if (!primed) {
+            primed = true;
+            System.arraycopy(currentPosition, 0, previousPosition, 0, 3);
+            System.arraycopy(currentVelocity, 0, previousVelocity, 0, 3);
+            previousFaceAngle = currentFaceAngle;
+            System.arraycopy(currentVertices, 0, previousVertices, 0, currentTriangles * SM64MarioGeometryBuffers.POSITION_FLOATS_PER_TRIANGLE);
+            previousTriangles = currentTriangles;
+        }
+    }
+    
+    /**
+     * Blends the position of Mario.
+     *
+     * @param alpha The blend factor, 0 is the previous tick and 1 the current one
+     * @param destination The array for the X, Y and Z components
+     * @return The destination array
+     */
+    public float[] position(float alpha, float[] destination) {
+        return blend(checkAlpha(alpha), previousPosition, currentPosition, destination);
+    }
+    
+    /**
+     * Blends the velocity of Mario.
+     *
+     * @param alpha The blend factor, 0 is the previous tick and 1 the current one
+     * @param destination The array for the X, Y and Z components
+     * @return The destination array
+     */
+    public float[] velocity(float alpha, float[] destination) {
+        return blend(checkAlpha(alpha), previousVelocity, currentVelocity, destination);
+    }
+    
+    /**
+     * Blends the face angle of Mario along the shortest arc.
+     *
+     * @param alpha The blend factor, 0 is the previous tick and 1 the current one
+     * @return The blended angle in radians
+     */
+    public float faceAngle(float alpha) {
+        checkAlpha(alpha);
+        var delta = (float) Math.IEEEremainder(currentFaceAngle - previousFaceAngle, TAU);
+        return previousFaceAngle + delta * alpha;
+    }
+    
+    /**
+     * Gets the amount of triangles of the current tick, this is the amount of triangles written by
+     * {@link #vertices(float, MemorySegment) vertices}.
+     *
+     * @return The amount of triangles
+     */
+    public int triangles() {
+        return currentTriangles;
+    }
+    
+    /**
+     * Blends the vertex positions of Mario into a float array, 9 floats per triangle. Triangles that did not exist in
+     * the previous tick are not blended.
+     *
+     * @param alpha The blend factor, 0 is the previous tick and 1 the current one
+     * @param destination The array to write to, must hold at least {@link #triangles() triangles} * 9 floats
+     * @return The amount of triangles written
+     */
+    public int vertices(float alpha, float[] destination) {
+        checkAlpha(alpha);
+        var floats = currentTriangles * SM64MarioGeometryBuffers.POSITION_FLOATS_PER_TRIANGLE;
+        Objects.checkFromIndexSize(0, floats, destination.length);
+        
+        var blended = Math.min(previousTriangles, currentTriangles) * SM64MarioGeometryBuffers.POSITION_FLOATS_PER_TRIANGLE;
+        var previous = previousVertices;
+        var current = currentVertices;
+        for (int i = 0; i < blended; i++) {
+            destination[i] = previous[i] + (current[i] - previous[i]) * alpha;
+        }
+        System.arraycopy(current, blended, destination, blended, floats - blended);
+        return currentTriangles;
+    }
+    
+    /**
+     * Blends the vertex positions of Mario into native memory, 9 floats per triangle. Triangles that did not exist in
+     * the previous tick are not blended.
+     *
+     * @param alpha The blend factor, 0 is the previous tick and 1 the current one
+     * @param destination The segment to write to, must hold at least {@link #triangles() triangles} * 9 floats
+     * @return The amount of triangles written
+     */
+    public int vertices(float alpha, MemorySegment destination) {
+        var triangles = vertices(alpha, blendedVertices);
+        MemorySegment.copy(
+            blendedVertices, 0,
+            destination, ValueLayout.JAVA_FLOAT, 0,
+            triangles * SM64MarioGeometryBuffers.POSITION_FLOATS_PER_TRIANGLE
+        );
+        return triangles;
+    }
+    
+    private static float[] blend(float alpha, float[] previous, float[] current, float[] destination) {
+        for (int i = 0; i < 3; i++) {
+            destination[i] = previous[i] + (current[i] - previous[i]) * alpha;
+        }
+        return destination;
+    }
+    
+    private static float checkAlpha(float alpha) {
+        if (!(alpha >= 0 && alpha <= 1)) {
+            throw new IllegalArgumentException("alpha must be between 0 and 1, got " + alpha);
+        }
+        return alpha;
+    }
+}
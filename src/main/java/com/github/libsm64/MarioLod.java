@@ -0,0 +1,173 @@
+package com.github.libsm64;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Decides which Marios are ticked on a frame, so Marios far away from every observer or standing idle are ticked at a
+ * reduced rate. A Mario that is ticked every n frames moves n times slower, use this for Marios nobody is looking at
+ * closely.
+ * <p>
+ * The reduced ticks are spread out by Mario id so every frame does about the same amount of work. Marios with input or
+ * velocity are never treated as idle.
+ * <p>
+ * This is not thread safe.
+ */
+public final class MarioLod {
+    /**
+     * Squared speed below which a Mario counts as standing still.
+     */
+    private static final float IDLE_SPEED_SQUARED = 1e-4F;
+    
+    private final float[] distancesSquared;
+    private final int[] intervals;
+    private final int idleTicks;
+    private final int idleInterval;
+    
+    private float[] observers = new float[0];
+    private int[] idle = new int[64];
+    
+    /**
+     * Creates a LOD policy that ticks Marios within 2000 units of an observer every frame, within 6000 units every
+     * second frame and everything else every fourth frame. Marios that were idle for a second are ticked every fourth
+     * frame.
+     *
+     * @return The policy
+     */
+    public static MarioLod standard() {
+        return new MarioLod(new float[] {2000, 6000}, new int[] {1, 2, 4}, 30, 4);
+    }
+    
+    /**
+     * Creates a LOD policy.
+     *
+     * @param distances The distance thresholds in increasing order
+     * @param intervals The tick interval within each threshold, plus one for everything beyond the last
+     * @param idleTicks How many frames a Mario has to be idle before it is ticked at the idle interval
+     * @param idleInterval The tick interval of idle Marios
+     */
+    public MarioLod(float[] distances, int[] intervals, int idleTicks, int idleInterval) {
+        Objects.requireNonNull(distances, "distances can't be null");
+        Objects.requireNonNull(intervals, "intervals can't be null");
+        if (intervals.length != distances.length + 1) {
+            throw new IllegalArgumentException("intervals must have one more entry than distances");
+        }
+        for (int i = 0; i < intervals.length; i++) {
+            if (intervals[i] <= 0) {
+                throw new IllegalArgumentException("intervals must be greater than 0");
+            }
+            if (i > 0 && i < distances.length && distances[i] < distances[i - 1]) {
+                throw new IllegalArgumentException("distances must be in increasing order");
+            }
+        }
+        if (idleTicks <= 0 || idleInterval <= 0) {
+            throw new IllegalArgumentException("idleTicks and idleInterval must be greater than 0");
+        }
+        
+        distancesSquared = new float[distances.length];
+        for (int i = 0; i < distances.length; i++) {
+            distancesSquared[i] = distances[i] * distances[i];
+        }
+        this.intervals = intervals.clone();
+        this.idleTicks = idleTicks;
+        this.idleInterval = idleInterval;
+    }
+    
+    /**
+     * Sets the points Marios are measured against, like cameras or players. Without observers the distance is ignored.
+     *
+     * @param positions The observer positions as X, Y, Z triples, they are copied
+     */
+    public void observers(float[] positions) {
+        Objects.requireNonNull(positions, "positions can't be null");
+        if (positions.length % 3 != 0) {
+            throw new IllegalArgumentException("positions must contain X, Y, Z triples");
+        }
+        observers = positions.clone();
+    }
+    
+    /**
+     * Decides if a Mario should be ticked on a frame. Call this once per Mario per frame.
+     *
+     * @param frame The current frame
+     * @param marioId The id of the Mario
+     * @param state The last state of the Mario
+     * @param active True if the Mario has input this frame
+     * @return True if the Mario should be ticked
+     */
+    public boolean shouldTick(long frame, int marioId, SM64MarioState state, boolean active) {
+        return shouldTick(
+            frame, marioId,
+            state.positionX(), state.positionY(), state.positionZ(),
+            state.velocityX(), state.velocityY(), state.velocityZ(),
+            active
+        );
+    }
+    
+    /**
+     * Decides if a Mario should be ticked on a frame. Call this once per Mario per frame.
+     *
+     * @param frame The current frame
+     * @param marioId The id of the Mario
+     * @param x The X position of the Mario
+     * @param y The Y position of the Mario
+     * @param z The Z position of the Mario
+     * @param velocityX The X velocity of the Mario
+     * @param velocityY The Y velocity of the Mario
+     * @param velocityZ The Z velocity of the Mario
+     * @param active True if the Mario has input this frame
+     * @return True if the Mario should be ticked
+     */
+    public boolean shouldTick(long frame, int marioId, float x, float y, float z, float velocityX, float velocityY, float velocityZ, boolean active) {
+        if (marioId < 0) {
+            throw new IllegalArgumentException("marioId can't be negative");
+        }
+        if (marioId >= idle.length) {
+            idle = Arrays.copyOf(idle, Math.max(idle.length * 2, marioId + 1));
+        }
+        
+        var moving = velocityX * velocityX + velocityY * velocityY + velocityZ * velocityZ > IDLE_SPEED_SQUARED;
+        if (active || moving) {
+            idle[marioId] = 0;
+        } else if (idle[marioId] < idleTicks) {
+            idle[marioId]++;
+        }
+        
+        var interval = distanceInterval(x, y, z);
+        if (idle[marioId] >= idleTicks) {
+            interval = Math.max(interval, idleInterval);
+        }
+        return interval == 1 || Math.floorMod(frame + marioId, (long) interval) == 0;
+    }
+    
+    /**
+     * Forgets the idle time of a Mario, call this when it is deleted so the id can be reused.
+     *
+     * @param marioId The id of the Mario
+     */
+    public void forget(int marioId) {
+        if (marioId >= 0 && marioId < idle.length) {
+            idle[marioId] = 0;
+        }
+    }
+    
+    private int distanceInterval(float x, float y, float z) {
+        if (observers.length == 0) {
+            return intervals[0];
+        }
+        
+        var nearest = Float.POSITIVE_INFINITY;
+        for (int i = 0; i < observers.length; i += 3) {
+            var dx = observers[i] - x;
+            var dy = observers[i + 1] - y;
+            var dz = observers[i + 2] - z;
+            nearest = Math.min(nearest, dx * dx + dy * dy + dz * dz);
+        }
+        for (int i = 0; i < distancesSquared.length; i++) {
+            if (nearest <= distancesSquared[i]) {
+                return intervals[i];
+            }
+        }
+        return intervals[intervals.length - 1];
+    }
+}
@@ -0,0 +1,641 @@
+package com.github.libsm64;
+
+import java.io.*;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SegmentAllocator;
+import java.lang.foreign.ValueLayout;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Converts OBJ and PLY meshes into {@link SM64Surface SM64Surface} buffers. Files are streamed twice, the first pass
+ * reads the vertices and counts the triangles so the buffer can be allocated up front, the second pass reads the faces
+ * in chunks that are quantised in parallel. Only the vertices and a bounded amount of chunks are ever held in memory.
+ * <p>
+ * Polygons with more than three vertices are split into triangle fans, the winding of the file is kept.
+ */
+public final class MeshImporter {
+    private MeshImporter() {
+        throw new AssertionError();
+    }
+    
+    /**
+     * The settings of an import.
+     *
+     * @param scale The factor every vertex component is multiplied by before it is rounded to a short
+     * @param type The type of every surface
+     * @param force The force of every surface
+     * @param terrain The terrain of every surface
+     * @param chunkTriangles The amount of triangles quantised per parallel task
+     */
+    public record Settings(float scale, short type, short force, int terrain, int chunkTriangles) {
+        /**
+         * Unscaled default surfaces in chunks of 64Ki triangles.
+         */
+        public static final Settings DEFAULT = new Settings(1, (short) 0, (short) 0, 0, 1 << 16);
+        
+        public Settings {
+            if (!Float.isFinite(scale) || scale == 0) {
+                throw new IllegalArgumentException("scale must be finite and non-zero");
+            }
+            if (chunkTriangles <= 0) {
+                throw new IllegalArgumentException("chunkTriangles must be greater than 0");
+            }
+        }
+        
+        public Settings scale(float scale) {
+            return new Settings(scale, type, force, terrain, chunkTriangles);
+        }
+        
+        public Settings type(short type) {
+            return new Settings(scale, type, force, terrain, chunkTriangles);
+        }
+        
+        public Settings force(short force) {
+            return new Settings(scale, type, force, terrain, chunkTriangles);
+        }
+        
+        public Settings terrain(int terrain) {
+            return new Settings(scale, type, force, terrain, chunkTriangles);
+        }
+        
+        public Settings chunkTriangles(int chunkTriangles) {
+            return new Settings(scale, type, force, terrain, chunkTriangles);
+        }
+    }
+    
+    /**
+     * The amount of shorts in a single surface.
+     */
+    private static final int SURFACE_SHORTS = (int) (SM64Surface.BYTES / Short.BYTES);
+    
+    /**
+     * Imports a mesh, the format is picked based on the file extension.
+     *
+     * @param path The mesh to import
+     * @param settings The import settings
+     * @param allocator The allocator of the returned buffer
+     * @return The surfaces of the mesh
+     * @throws IOException If the file could not be read or is not a supported mesh
+     */
+    public static SM64Surface.Buffer importMesh(Path path, Settings settings, SegmentAllocator allocator) throws IOException {
+        var name = path.getFileName().toString().toLowerCase(Locale.ROOT);
+        if (name.endsWith(".obj")) {
+            return importObj(path, settings, allocator);
+        } else if (name.endsWith(".ply")) {
+            return importPly(path, settings, allocator);
+        } else {
+            throw new IOException("Unsupported mesh format: " + path);
+        }
+    }
+    
+    /**
+     * Imports a Wavefront OBJ mesh. Only the vertex positions and faces are read.
+     *
+     * @param path The mesh to import
+     * @param settings The import settings
+     * @param allocator The allocator of the returned buffer
+     * @return The surfaces of the mesh
+     * @throws IOException If the file could not be read or is malformed
+     */
+    public static SM64Surface.Buffer importObj(Path path, Settings settings, SegmentAllocator allocator) throws IOException {
+        Objects.requireNonNull(path, "path can't be null");
+        Objects.requireNonNull(settings, "settings can't be null");
+        Objects.requireNonNull(allocator, "allocator can't be null");
+        
+        // First pass, vertices and triangle count
+        var vertices = new Vertices();
+        long triangles = 0;
+        try (var reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            var tokens = new Tokens();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                tokens.reset(line);
+                var keyword = tokens.next();
+                if ("v".equals(keyword)) {
+                    vertices.add(tokens.nextFloat(), tokens.nextFloat(), tokens.nextFloat());
+                } else if ("f".equals(keyword)) {
+                    int count = 0;
+                    while (tokens.next() != null) {
+                        count++;
+                    }
+                    if (count >= 3) {
+                        triangles += count - 2;
+                    }
+                }
+            }
+        }
+        
+        if (triangles == 0) {
+            throw new IOException(path + " has no triangles");
+        }
+        var buffer = SM64Surface.buffer(triangles, allocator);
+        
+        // Second pass, faces
+        try (
+            var reader = Files.newBufferedReader(path, StandardCharsets.UTF_8);
+            var writer = new SurfaceWriter(vertices, settings, buffer)
+        ) {
+            var tokens = new Tokens();
+            var face = new int[16];
+            int seenVertices = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                tokens.reset(line);
+                var keyword = tokens.next();
+                if ("v".equals(keyword)) {
+                    seenVertices++;
+                } else if ("f".equals(keyword)) {
+                    int count = 0;
+                    String token;
+                    while ((token = tokens.next()) != null) {
+                        var slash = token.indexOf('/');
+                        int index;
+                        try {
+                            index = Integer.parseInt(slash == -1 ? token : token.substring(0, slash));
+                        } catch (NumberFormatException e) {
+                            throw new IOException("Malformed face in " + path + ": " + line, e);
+                        }
+                        // OBJ indices are 1 based, negative ones are relative to the last vertex
+                        index = index < 0 ? seenVertices + index : index - 1;
+                        if (count == face.length) {
+                            face = Arrays.copyOf(face, count * 2);
+                        }
+                        face[count++] = index;
+                    }
+                    writer.polygon(face, count);
+                }
+            }
+            writer.finish();
+        }
+        return buffer;
+    }
+    
+    /**
+     * Imports a PLY mesh in the ASCII or either binary format. Only the x, y and z properties of the vertex element and
+     * the vertex_indices (or vertex_index) list of the face element are read.
+     *
+     * @param path The mesh to import
+     * @param settings The import settings
+     * @param allocator The allocator of the returned buffer
+     * @return The surfaces of the mesh
+     * @throws IOException If the file could not be read or is malformed
+     */
+    public static SM64Surface.Buffer importPly(Path path, Settings settings, SegmentAllocator allocator) throws IOException {
+        Objects.requireNonNull(path, "path can't be null");
+        Objects.requireNonNull(settings, "settings can't be null");
+        Objects.requireNonNull(allocator, "allocator can't be null");
+        
+        // First pass, vertices and triangle count
+        var vertices = new Vertices();
+        long[] triangles = {0};
+        Ply.read(path, vertices::add, (face, count) -> {
+            if (count >= 3) {
+                triangles[0] += count - 2;
+            }
+        });
+        
+        if (triangles[0] == 0) {
+            throw new IOException(path + " has no triangles");
+        }
+        var buffer = SM64Surface.buffer(triangles[0], allocator);
+        
+        // Second pass, faces
+        try (var writer = new SurfaceWriter(vertices, settings, buffer)) {
+            Ply.read(path, (x, y, z) -> {}, writer::polygon);
+            writer.finish();
+        }
+        return buffer;
+    }
+    
+    @FunctionalInterface
+    private interface VertexConsumer {
+        void vertex(float x, float y, float z);
+    }
+    
+    @FunctionalInterface
+    private interface FaceConsumer {
+        void face(int[] indices, int count) throws IOException;
+    }
+    
+    /**
+     * A growable array of vertex positions.
+     */
+    private static final class Vertices {
+        private float[] data = new float[3 * 1024];
+        private int size;
+        
+        void add(float x, float y, float z) {
+            if (size + 3 > data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            data[size++] = x;
+            data[size++] = y;
+            data[size++] = z;
+        }
+        
+        int count() {
+            return size / 3;
+        }
+    }
+    
+    /**
+     * A minimal whitespace tokenizer, avoids the regex and array of {@link String#split(String) split}.
+     */
+    private static final class Tokens {
+        private String line;
+        private int position;
+        
+        void reset(String line) {
+            this.line = line;
+            position = 0;
+        }
+        
+        String next() {
+            var length = line.length();
+            while (position < length && Character.isWhitespace(line.charAt(position))) {
+                position++;
+            }
+            if (position == length || line.charAt(position) == '#') {
+                return null;
+            }
+            var start = position;
+            while (position < length && !Character.isWhitespace(line.charAt(position))) {
+                position++;
+            }
+            return line.substring(start, position);
+        }
+        
+        float nextFloat() throws IOException {
+            var token = next();
+            if (token == null) {
+                throw new IOException("Expected a number in: " + line);
+            }
+            try {
+                return Float.parseFloat(token);
+            } catch (NumberFormatException e) {
+                throw new IOException("Expected a number in: " + line, e);
+            }
+        }
+    }
+    
+    /**
+     * Triangulates polygons into chunks and quantises the chunks into surfaces on the common pool. At most a few
+     * chunks per pool thread are in flight at any time.
+     */
+    private static final class SurfaceWriter implements AutoCloseable {
+        private final float[] vertices;
+        private final int vertexCount;
+        private final Settings settings;
+        private final SM64Surface.Buffer buffer;
+        private final int maxInFlight = ForkJoinPool.getCommonPoolParallelism() * 2 + 1;
+        private final ArrayDeque<Chunk> pending = new ArrayDeque<>();
+        
+        private int[] indices;
+        private int triangles;
+        private long written;
+        
+        private record Chunk(long start, int triangles, Future<short[]> surfaces) {}
+        
+        SurfaceWriter(Vertices vertices, Settings settings, SM64Surface.Buffer buffer) {
+            this.vertices = vertices.data;
+            this.vertexCount = vertices.count();
+            this.settings = settings;
+            this.buffer = buffer;
+            indices = new int[settings.chunkTriangles() * 3];
+        }
+        
+        void polygon(int[] face, int count) throws IOException {
+            for (int i = 0; i < count; i++) {
+                if (face[i] < 0 || face[i] >= vertexCount) {
+                    throw new IOException("Face references vertex " + face[i] + " of " + vertexCount);
+                }
+            }
+            for (int i = 2; i < count; i++) {
+                var base = triangles * 3;
+                indices[base] = face[0];
+                indices[base + 1] = face[i - 1];
+                indices[base + 2] = face[i];
+                if (++triangles == settings.chunkTriangles()) {
+                    flush();
+                }
+            }
+        }
+        
+        void finish() throws IOException {
+            flush();
+            while (!pending.isEmpty()) {
+                complete(pending.removeFirst());
+            }
+        }
+        
+        private void flush() throws IOException {
+            if (triangles == 0) {
+                return;
+            }
+            
+            var chunkIndices = indices;
+            var chunkTriangles = triangles;
+            pending.addLast(new Chunk(written, chunkTriangles, ForkJoinPool.commonPool().submit(() -> quantise(chunkIndices, chunkTriangles))));
+            written += chunkTriangles;
+            indices = new int[settings.chunkTriangles() * 3];
+            triangles = 0;
+            
+            while (pending.size() >= maxInFlight) {
+                complete(pending.removeFirst());
+            }
+        }
+        
+        private void complete(Chunk chunk) throws IOException {
+            short[] surfaces;
+            try {
+                surfaces = chunk.surfaces().get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while importing mesh");
+            } catch (ExecutionException e) {
+                throw new IOException("Failed to quantise mesh", e.getCause());
+            }
+            MemorySegment.copy(
+                surfaces, 0,
+                buffer.segment(), ValueLayout.JAVA_SHORT, chunk.start() * SM64Surface.BYTES,
+                chunk.triangles() * SURFACE_SHORTS
+            );
+        }
+        
+        private short[] quantise(int[] indices, int triangles) {
+            var scale = settings.scale();
+            var type = settings.type();
+            var force = settings.force();
+            var terrain = (short) settings.terrain();
+            
+            var surfaces = new short[triangles * SURFACE_SHORTS];
+            for (int triangle = 0; triangle < triangles; triangle++) {
+                var base = triangle * SURFACE_SHORTS;
+                surfaces[base] = type;
+                surfaces[base + 1] = force;
+                surfaces[base + 2] = terrain;
+                for (int vertex = 0; vertex < 3; vertex++) {
+                    var index = indices[triangle * 3 + vertex] * 3;
+                    var offset = base + 3 + vertex * 3;
+                    surfaces[offset] = quantise(vertices[index] * scale);
+                    surfaces[offset + 1] = quantise(vertices[index + 1] * scale);
+                    surfaces[offset + 2] = quantise(vertices[index + 2] * scale);
+                }
+            }
+            return surfaces;
+        }
+        
+        private static short quantise(float value) {
+            return (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, Math.round(value)));
+        }
+        
+        @Override
+        public void close() {
+            for (var chunk : pending) {
+                chunk.surfaces().cancel(false);
+            }
+            pending.clear();
+        }
+    }
+    
+    /**
+     * A streaming PLY reader.
+     */
+    private static final class Ply {
+        private enum Format {
+            ASCII,
+            BINARY_LITTLE_ENDIAN,
+            BINARY_BIG_ENDIAN,
+        }
+        
+        private enum Type {
+            INT8,
+            UINT8,
+            INT16,
+            UINT16,
+            INT32,
+            UINT32,
+            FLOAT32,
+            FLOAT64,
+            ;
+            
+            static Type of(String name) throws IOException {
+                return switch (name) {
+                    case "char", "int8" -> INT8;
+                    case "uchar", "uint8" -> UINT8;
+                    case "short", "int16" -> INT16;
+                    case "ushort", "uint16" -> UINT16;
+                    case "int", "int32" -> INT32;
+                    case "uint", "uint32" -> UINT32;
+                    case "float", "float32" -> FLOAT32;
+                    case "double", "float64" -> FLOAT64;
+                    default -> throw new IOException("Unknown PLY type " + name);
+                };
+            }
+        }
+        
+        /**
+         * A property of an element, countType is only set for lists.
+         */
+        private record Property(String name, Type type, Type countType) {}
+        
+        private record Element(String name, long count, List<Property> properties) {}
+        
+        static void read(Path path, VertexConsumer vertexConsumer, FaceConsumer faceConsumer) throws IOException {
+            try (var input = new BufferedInputStream(Files.newInputStream(path), 1 << 16)) {
+                Format format = null;
+                var elements = new ArrayList<Element>();
+                
+                var tokens = new Tokens();
+                String line = readHeaderLine(input);
+                if (!"ply".equals(line)) {
+                    throw new IOException(path + " is not a PLY file");
+                }
+                while (!"end_header".equals(line = readHeaderLine(input))) {
+                    tokens.reset(line);
+                    var keyword = tokens.next();
+                    if (keyword == null) {
+                        continue;
+                    }
+                    switch (keyword) {
+                        case "format" -> format = switch (String.valueOf(tokens.next())) {
+                            case "ascii" -> Format.ASCII;
+                            case "binary_little_endian" -> Format.BINARY_LITTLE_ENDIAN;
+                            case "binary_big_endian" -> Format.BINARY_BIG_ENDIAN;
+                            default -> throw new IOException("Unknown PLY format in " + path + ": " + line);
+                        };
+                        case "element" -> {
+                            var name = tokens.next();
+                            var count = tokens.next();
+                            if (name == null || count == null) {
+                                throw new IOException("Malformed PLY element in " + path + ": " + line);
+                            }
+                            elements.add(new Element(name, Long.parseLong(count), new ArrayList<>()));
+                        }
+                        case "property" -> {
+                            if (elements.isEmpty()) {
+                                throw new IOException("PLY property outside of an element in " + path);
+                            }
+                            var type = tokens.next();
+                            if ("list".equals(type)) {
+                                var countType = Type.of(String.valueOf(tokens.next()));
+                                var itemType = Type.of(String.valueOf(tokens.next()));
+                                elements.get(elements.size() - 1).properties().add(new Property(tokens.next(), itemType, countType));
+                            } else {
+                                elements.get(elements.size() - 1).properties().add(new Property(tokens.next(), Type.of(String.valueOf(type)), null));
+                            }
+                        }
+                        default -> {}
+                    }
+                }
+                if (format == null) {
+                    throw new IOException("PLY file " + path + " has no format");
+                }
+                
+                var values = format == Format.ASCII ? new AsciiValues(input) : new BinaryValues(input, format == Format.BINARY_LITTLE_ENDIAN);
+                var face = new int[16];
+                for (var element : elements) {
+                    var properties = element.properties();
+                    boolean vertex = "vertex".equals(element.name());
+                    boolean faces = "face".equals(element.name());
+                    
+                    for (long item = 0; item < element.count(); item++) {
+                        values.beginItem();
+                        float x = 0, y = 0, z = 0;
+                        for (var property : properties) {
+                            if (property.countType() == null) {
+                                var value = values.read(property.type());
+                                if (vertex) {
+                                    switch (property.name()) {
+                                        case "x" -> x = (float) value;
+                                        case "y" -> y = (float) value;
+                                        case "z" -> z = (float) value;
+                                        default -> {}
+                                    }
+                                }
+                            } else {
+                                var count = (int) values.read(property.countType());
+                                boolean indices = faces && ("vertex_indices".equals(property.name()) || "vertex_index".equals(property.name()));
+                                if (indices && count > face.length) {
+                                    face = new int[count];
+                                }
+                                for (int i = 0; i < count; i++) {
+                                    var value = values.read(property.type());
+                                    if (indices) {
+                                        face[i] = (int) value;
+                                    }
+                                }
+                                if (indices) {
+                                    faceConsumer.face(face, count);
+                                }
+                            }
+                        }
+                        if (vertex) {
+                            vertexConsumer.vertex(x, y, z);
+                        }
+                    }
+                }
+            }
+        }
+        
+        /**
+         * Reads a single ASCII line of the header without buffering past it, the body may be binary.
+         */
+        private static String readHeaderLine(InputStream input) throws IOException {
+            var builder = new StringBuilder();
+            int next;
+            while ((next = input.read()) != '\n') {
+                if (next == -1) {
+                    throw new EOFException("Unexpected end of PLY header");
+                }
+                if (next != '\r') {
+                    builder.append((char) next);
+                }
+            }
+            return builder.toString().strip();
+        }
+        
+        private interface Values {
+            void beginItem() throws IOException;
+            
+            double read(Type type) throws IOException;
+        }
+        
+        private static final class AsciiValues implements Values {
+            private final BufferedReader reader;
+            private final Tokens tokens = new Tokens();
+            
+            AsciiValues(InputStream input) {
+                reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.US_ASCII));
+            }
+            
+            @Override
+            public void beginItem() throws IOException {
+                var line = reader.readLine();
+                if (line == null) {
+                    throw new EOFException("Unexpected end of PLY data");
+                }
+                tokens.reset(line);
+            }
+            
+            @Override
+            public double read(Type type) throws IOException {
+                var token = tokens.next();
+                if (token == null) {
+                    throw new IOException("Missing PLY value");
+                }
+                try {
+                    return Double.parseDouble(token);
+                } catch (NumberFormatException e) {
+                    throw new IOException("Malformed PLY value " + token, e);
+                }
+            }
+        }
+        
+        private static final class BinaryValues implements Values {
+            private final DataInputStream input;
+            private final boolean littleEndian;
+            
+            BinaryValues(InputStream input, boolean littleEndian) {
+                this.input = new DataInputStream(input);
+                this.littleEndian = littleEndian;
+            }
+            
+            @Override
+            public void beginItem() {}
+            
+            @Override
+            public double read(Type type) throws IOException {
+                return switch (type) {
+                    case INT8 -> input.readByte();
+                    case UINT8 -> input.readUnsignedByte();
+                    case INT16 -> order(input.readShort());
+                    case UINT16 -> Short.toUnsignedInt(order(input.readShort()));
+                    case INT32 -> order(input.readInt());
+                    case UINT32 -> Integer.toUnsignedLong(order(input.readInt()));
+                    case FLOAT32 -> Float.intBitsToFloat(order(input.readInt()));
+                    case FLOAT64 -> Double.longBitsToDouble(littleEndian ? Long.reverseBytes(input.readLong()) : input.readLong());
+                };
+            }
+            
+            private short order(short value) {
+                return littleEndian ? Short.reverseBytes(value) : value;
+            }
+            
+            private int order(int value) {
+                return littleEndian ? Integer.reverseBytes(value) : value;
+            }
+        }
+    }
+}
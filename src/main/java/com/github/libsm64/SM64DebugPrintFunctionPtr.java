@@ -21,7 +21,7 @@ public interface SM64DebugPrintFunctionPtr {
     static MemorySegment allocate(SM64DebugPrintFunctionPtr callback, MemorySession session) {
         Objects.requireNonNull(callback, "callback can't be null");
         return Binder.load().upcall(
-            LibSM64.SM64_DEBUG_PRINT_FUNCTION_PTR_JAVA_HANDLE.bindTo(callback),
+            LibSM64.DebugPrint.JAVA_HANDLE.bindTo(callback),
             LibSM64.SM64_DEBUG_PRINT_FUNCTION_PTR_DESCRIPTOR,
             session
         );
@@ -30,7 +30,7 @@ public interface SM64DebugPrintFunctionPtr {
     static SM64DebugPrintFunctionPtr ofAddress(Addressable addressable) {
         Utils.nonNull(addressable, "addressable can't be null");
         return new SM64DebugPrintFunctionPtr() {
-            private final MethodHandle handle = LibSM64.SM64_DEBUG_PRINT_FUNCTION_PTR_NATIVE_HANDLE.bindTo(addressable);
+            private final MethodHandle handle = LibSM64.DebugPrint.NATIVE_HANDLE.bindTo(addressable);
             
             @Override
             public void invoke(MemoryAddress message) {
@@ -0,0 +1,195 @@
+package com.github.libsm64;
+
+import java.lang.foreign.Addressable;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Owns a {@link SM64World SM64World} on a single thread and makes it safe to use from any thread. Commands are put into
+ * a lock free queue and the engine thread runs all queued commands in a batch once per frame, followed by the tasks
+ * registered with {@link #registerTick(Consumer) registerTick}.
+ * <p>
+ * Any memory passed to a command has to be accessible from the engine thread and must not be changed until the
+ * returned future completes. Never wait for a future from inside a command, the engine thread would wait for itself.
+ */
+public final class SM64Engine implements AutoCloseable {
+    /**
+     * A queued command.
+     *
+     * @param function The code to run on the engine thread
+     * @param future The future that receives the result
+     * @param <T> The type of the result
+     */
+    private record Command<T>(Function<SM64World, T> function, CompletableFuture<T> future) {
+        void run(SM64World world) {
+            try {
+                future.complete(function.apply(world));
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        }
+    }
+    
+    /**
+     * The most commands that are run per frame, anything above is left for the next frame so a flood of commands
+     * can't stall the ticks.
+     */
+    private static final int MAX_COMMANDS_PER_FRAME = 4096;
+    
+    private final SM64World world;
+    private final Queue<Command<?>> commands = new ConcurrentLinkedQueue<>();
+    private final TickScheduler scheduler;
+    private volatile boolean closed;
+    
+    /**
+     * Creates an engine for the {@link SM64World#global() global} world that runs at the SM64 frame rate.
+     */
+    public SM64Engine() {
+        this(SM64World.global(), new TickScheduler());
+    }
+    
+    /**
+     * Creates and starts an engine.
+     *
+     * @param world The world owned by the engine, it should not be used from anywhere else
+     * @param scheduler A scheduler that was not started yet, it drives the engine thread
+     */
+    public SM64Engine(SM64World world, TickScheduler scheduler) {
+        this.world = Objects.requireNonNull(world, "world can't be null");
+        this.scheduler = Objects.requireNonNull(scheduler, "scheduler can't be null");
+        
+        scheduler.register(this::drain);
+        scheduler.start();
+    }
+    
+    /**
+     * Queues a command for the next frame.
+     *
+     * @param command The command
+     * @return A future that completes with the result of the command
+     * @param <T> The type of the result
+     */
+    public <T> CompletableFuture<T> submit(Function<SM64World, T> command) {
+        Objects.requireNonNull(command, "command can't be null");
+        
+        var future = new CompletableFuture<T>();
+        if (closed) {
+            future.completeExceptionally(new IllegalStateException("SM64Engine is closed"));
+            return future;
+        }
+        
+        var queued = new Command<>(command, future);
+        commands.add(queued);
+        // close() may have drained the queue between the check and the add, if the command is still queued nobody
+        // else will complete it. If it is gone close() or the engine thread already took care of it.
+        if (closed && commands.remove(queued)) {
+            future.completeExceptionally(new IllegalStateException("SM64Engine is closed"));
+        }
+        return future;
+    }
+    
+    /**
+     * Queues a command without a result for the next frame.
+     *
+     * @param command The command
+     * @return A future that completes once the command ran
+     */
+    public CompletableFuture<Void> execute(Consumer<SM64World> command) {
+        Objects.requireNonNull(command, "command can't be null");
+        return submit((world) -> {
+            command.accept(world);
+            return null;
+        });
+    }
+    
+    /**
+     * Registers a task that runs on the engine thread every frame after the queued commands.
+     *
+     * @param task The task
+     * @return The registration, for {@link #unregisterTick(Runnable) unregisterTick}
+     */
+    public Runnable registerTick(Consumer<SM64World> task) {
+        Objects.requireNonNull(task, "task can't be null");
+        return scheduler.register(() -> task.accept(world));
+    }
+    
+    /**
+     * Removes a task registered with {@link #registerTick(Consumer) registerTick}.
+     *
+     * @param registration The registration
+     * @return True if the task was registered
+     */
+    public boolean unregisterTick(Runnable registration) {
+        return scheduler.unregister(registration);
+    }
+    
+    public CompletableFuture<Void> globalInit(Addressable rom, Addressable outTexture, Addressable debugPrintFunction) {
+        return execute((world) -> world.sm64_global_init(rom, outTexture, debugPrintFunction));
+    }
+    
+    public CompletableFuture<Void> globalTerminate() {
+        return execute(SM64World::sm64_global_terminate);
+    }
+    
+    public CompletableFuture<Void> staticSurfacesLoad(SM64Surface.Buffer surfaceArray) {
+        return execute((world) -> world.sm64_static_surfaces_load(surfaceArray));
+    }
+    
+    public CompletableFuture<Integer> marioCreate(short x, short y, short z) {
+        return submit((world) -> world.sm64_mario_create(x, y, z));
+    }
+    
+    public CompletableFuture<Void> marioTick(int marioId, SM64MarioInputs inputs, SM64MarioState outState, SM64MarioGeometryBuffers outBuffers) {
+        return execute((world) -> world.sm64_mario_tick(marioId, inputs, outState, outBuffers));
+    }
+    
+    public CompletableFuture<Void> marioDelete(int marioId) {
+        return execute((world) -> world.sm64_mario_delete(marioId));
+    }
+    
+    public CompletableFuture<Long> surfaceObjectCreate(SM64SurfaceObject surfaceObject) {
+        return submit((world) -> world.sm64_surface_object_create(surfaceObject));
+    }
+    
+    public CompletableFuture<Void> surfaceObjectMove(long objectId, SM64ObjectTransform transform) {
+        return execute((world) -> world.sm64_surface_object_move(objectId, transform));
+    }
+    
+    public CompletableFuture<Void> surfaceObjectDelete(long objectId) {
+        return execute((world) -> world.sm64_surface_object_delete(objectId));
+    }
+    
+    /**
+     * Gets the scheduler that drives this engine, useful for its statistics.
+     *
+     * @return The scheduler
+     */
+    public TickScheduler scheduler() {
+        return scheduler;
+    }
+    
+    /**
+     * Stops the engine thread. Commands that did not run yet are completed exceptionally, the world is not closed.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        scheduler.close();
+        
+        Command<?> command;
+        while ((command = commands.poll()) != null) {
+            command.future.completeExceptionally(new IllegalStateException("SM64Engine was closed"));
+        }
+    }
+    
+    private void drain() {
+        Command<?> command;
+        for (int i = 0; i < MAX_COMMANDS_PER_FRAME && (command = commands.poll()) != null; i++) {
+            command.run(world);
+        }
+    }
+}
@@ -4,6 +4,8 @@ import com.github.libsm64.internal.Utils;
 
 import java.lang.foreign.*;
 import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
 import java.util.Objects;
 
 /*
@@ -32,6 +34,27 @@ public record SM64MarioGeometryBuffers(MemorySegment segment) {
     private static final VarHandle UV = Utils.varHandle(LAYOUT, "uv");
     private static final VarHandle NUM_TRIANGLES_USED = Utils.varHandle(LAYOUT, "numTrianglesUsed");
     
+    static final int POSITION_FLOATS_PER_TRIANGLE = 9;
+    static final int NORMAL_FLOATS_PER_TRIANGLE = 9;
+    static final int COLOR_FLOATS_PER_TRIANGLE = 9;
+    static final int UV_FLOATS_PER_TRIANGLE = 6;
+    
+    static final long POSITION_BYTES = (long) LibSM64.SM64_GEO_MAX_TRIANGLES * POSITION_FLOATS_PER_TRIANGLE * Float.BYTES;
+    static final long NORMAL_BYTES = (long) LibSM64.SM64_GEO_MAX_TRIANGLES * NORMAL_FLOATS_PER_TRIANGLE * Float.BYTES;
+    static final long COLOR_BYTES = (long) LibSM64.SM64_GEO_MAX_TRIANGLES * COLOR_FLOATS_PER_TRIANGLE * Float.BYTES;
+    static final long UV_BYTES = (long) LibSM64.SM64_GEO_MAX_TRIANGLES * UV_FLOATS_PER_TRIANGLE * Float.BYTES;
+    
+    /**
+     * The alignment of the arrays allocated by {@link #allocate(MemorySession) allocate}, a cache line.
+     */
+    private static final long ARRAY_ALIGNMENT = 64;
+    
+    /**
+     * Geometry targets for ticks whose geometry is never read. There is one per thread so cores ticking different
+     * worlds don't fight over the same cache lines.
+     */
+    private static final ThreadLocal<SM64MarioGeometryBuffers> SCRATCH = ThreadLocal.withInitial(() -> scratch(MemorySession.openImplicit()));
+    
     public SM64MarioGeometryBuffers {
         Utils.nonNull(segment, "segment can't be null");
         Utils.validateSize(segment, BYTES, "segment was too small");
@@ -49,6 +72,57 @@ public record SM64MarioGeometryBuffers(MemorySegment segment) {
         ));
     }
     
+    /**
+     * Allocates the struct and all four arrays large enough for {@link LibSM64#SM64_GEO_MAX_TRIANGLES the maximum
+     * amount of triangles} in a single allocation. Everything lives as long as the provided session.
+     *
+     * @param session The session of the allocation
+     * @return The new buffers
+     */
+    public static SM64MarioGeometryBuffers allocate(MemorySession session) {
+        Objects.requireNonNull(session, "session can't be null");
+        
+        var arena = session.allocate(POSITION_BYTES + NORMAL_BYTES + COLOR_BYTES + UV_BYTES + BYTES, ARRAY_ALIGNMENT);
+        long offset = 0;
+        var position = arena.asSlice(offset, POSITION_BYTES);
+        offset += POSITION_BYTES;
+        var normal = arena.asSlice(offset, NORMAL_BYTES);
+        offset += NORMAL_BYTES;
+        var color = arena.asSlice(offset, COLOR_BYTES);
+        offset += COLOR_BYTES;
+        var uv = arena.asSlice(offset, UV_BYTES);
+        offset += UV_BYTES;
+        
+        return new SM64MarioGeometryBuffers(arena.asSlice(offset, BYTES))
+            .position(position)
+            .normal(normal)
+            .color(color)
+            .uv(uv)
+            .numTrianglesUsed(0);
+    }
+    
+    /**
+     * Gets the scratch buffers of the current thread, used by state only ticks. The contents are overwritten by every
+     * state only tick on this thread and are never meaningful.
+     *
+     * @return The scratch buffers
+     */
+    static SM64MarioGeometryBuffers scratch() {
+        return SCRATCH.get();
+    }
+    
+    /**
+     * Allocates geometry buffers for ticks whose geometry is never read. libsm64 only writes the arrays and nothing
+     * reads them, so all four share the largest one.
+     *
+     * @param allocator The allocator for the buffers
+     * @return The new scratch buffers
+     */
+    static SM64MarioGeometryBuffers scratch(SegmentAllocator allocator) {
+        var arrays = allocator.allocate(POSITION_BYTES, ARRAY_ALIGNMENT);
+        return new SM64MarioGeometryBuffers(allocator).position(arrays).normal(arrays).color(arrays).uv(arrays);
+    }
+    
     public MemoryAddress position() {
         return (MemoryAddress) POSITION.get(segment);
     }
@@ -66,26 +140,26 @@ public record SM64MarioGeometryBuffers(MemorySegment segment) {
     }
     
     public int numTrianglesUsed() {
-        return Short.toUnsignedInt((short) NUM_TRIANGLES_USED.get());
+        return Short.toUnsignedInt((short) NUM_TRIANGLES_USED.get(segment));
     }
     
     public SM64MarioGeometryBuffers position(Addressable value) {
-        POSITION.set(segment, value);
+        POSITION.set(segment, value.address());
         return this;
     }
     
     public SM64MarioGeometryBuffers normal(Addressable value) {
-        NORMAL.set(segment, value);
+        NORMAL.set(segment, value.address());
         return this;
     }
     
     public SM64MarioGeometryBuffers color(Addressable value) {
-        COLOR.set(segment, value);
+        COLOR.set(segment, value.address());
         return this;
     }
     
     public SM64MarioGeometryBuffers uv(Addressable value) {
-        UV.set(segment, value);
+        UV.set(segment, value.address());
         return this;
     }
     
@@ -94,6 +168,92 @@ public record SM64MarioGeometryBuffers(MemorySegment segment) {
         return this;
     }
     
+    /**
+     * Gets the positions written by the last tick, 9 floats per used triangle. This is a view of the array, not a copy.
+     *
+     * @return The used part of the position array
+     */
+    public MemorySegment positionData() {
+        return data(position(), POSITION_FLOATS_PER_TRIANGLE);
+    }
+    
+    /**
+     * Gets the normals written by the last tick, 9 floats per used triangle. This is a view of the array, not a copy.
+     *
+     * @return The used part of the normal array
+     */
+    public MemorySegment normalData() {
+        return data(normal(), NORMAL_FLOATS_PER_TRIANGLE);
+    }
+    
+    /**
+     * Gets the colors written by the last tick, 9 floats per used triangle. This is a view of the array, not a copy.
+     *
+     * @return The used part of the color array
+     */
+    public MemorySegment colorData() {
+        return data(color(), COLOR_FLOATS_PER_TRIANGLE);
+    }
+    
+    /**
+     * Gets the texture coordinates written by the last tick, 6 floats per used triangle. This is a view of the array,
+     * not a copy.
+     *
+     * @return The used part of the uv array
+     */
+    public MemorySegment uvData() {
+        return data(uv(), UV_FLOATS_PER_TRIANGLE);
+    }
+    
+    /**
+     * Gets the positions written by the last tick as a native order {@link FloatBuffer FloatBuffer}.
+     *
+     * @return A view of the used part of the position array
+     */
+    public FloatBuffer positionBuffer() {
+        return floatBuffer(positionData());
+    }
+    
+    /**
+     * Gets the normals written by the last tick as a native order {@link FloatBuffer FloatBuffer}.
+     *
+     * @return A view of the used part of the normal array
+     */
+    public FloatBuffer normalBuffer() {
+        return floatBuffer(normalData());
+    }
+    
+    /**
+     * Gets the colors written by the last tick as a native order {@link FloatBuffer FloatBuffer}.
+     *
+     * @return A view of the used part of the color array
+     */
+    public FloatBuffer colorBuffer() {
+        return floatBuffer(colorData());
+    }
+    
+    /**
+     * Gets the texture coordinates written by the last tick as a native order {@link FloatBuffer FloatBuffer}.
+     *
+     * @return A view of the used part of the uv array
+     */
+    public FloatBuffer uvBuffer() {
+        return floatBuffer(uvData());
+    }
+    
+    private MemorySegment data(MemoryAddress address, int floatsPerTriangle) {
+        Utils.nonNull(address, "array was not set");
+        return MemorySegment.ofAddress(
+            address,
+            (long) numTrianglesUsed() * floatsPerTriangle * Float.BYTES,
+            segment.session()
+        );
+    }
+    
+    private static FloatBuffer floatBuffer(MemorySegment segment) {
+        return segment.asByteBuffer().order(ByteOrder.nativeOrder()).asFloatBuffer();
+    }
+    
     Addressable address() {
         return segment.address();
     }
@@ -56,6 +56,40 @@ public record SM64MarioState(MemorySegment segment) {
         return segment.asSlice(VELOCITY_OFFSET, VELOCITY_BYTES);
     }
     
+    public float positionX() {
+        return segment.get(ValueLayout.JAVA_FLOAT, POSITION_OFFSET);
+    }
+    
+    public float positionY() {
+        return segment.get(ValueLayout.JAVA_FLOAT, POSITION_OFFSET + Float.BYTES);
+    }
+    
+    public float positionZ() {
+        return segment.get(ValueLayout.JAVA_FLOAT, POSITION_OFFSET + Float.BYTES * 2);
+    }
+    
+    public float[] position(float[] destination) {
+        MemorySegment.copy(segment, ValueLayout.JAVA_FLOAT, POSITION_OFFSET, destination, 0, 3);
+        return destination;
+    }
+    
+    public float velocityX() {
+        return segment.get(ValueLayout.JAVA_FLOAT, VELOCITY_OFFSET);
+    }
+    
+    public float velocityY() {
+        return segment.get(ValueLayout.JAVA_FLOAT, VELOCITY_OFFSET + Float.BYTES);
+    }
+    
+    public float velocityZ() {
+        return segment.get(ValueLayout.JAVA_FLOAT, VELOCITY_OFFSET + Float.BYTES * 2);
+    }
+    
+    public float[] velocity(float[] destination) {
+        MemorySegment.copy(segment, ValueLayout.JAVA_FLOAT, VELOCITY_OFFSET, destination, 0, 3);
+        return destination;
+    }
+    
     public float faceAngle() {
         return (float) FACE_ANGLE.get(segment);
     }
@@ -78,6 +112,50 @@ public record SM64MarioState(MemorySegment segment) {
         return this;
     }
     
+    public SM64MarioState position(float x, float y, float z) {
+        segment.set(ValueLayout.JAVA_FLOAT, POSITION_OFFSET, x);
+        segment.set(ValueLayout.JAVA_FLOAT, POSITION_OFFSET + Float.BYTES, y);
+        segment.set(ValueLayout.JAVA_FLOAT, POSITION_OFFSET + Float.BYTES * 2, z);
+        return this;
+    }
+    
+    public SM64MarioState positionX(float value) {
+        segment.set(ValueLayout.JAVA_FLOAT, POSITION_OFFSET, value);
+        return this;
+    }
+    
+    public SM64MarioState positionY(float value) {
+        segment.set(ValueLayout.JAVA_FLOAT, POSITION_OFFSET + Float.BYTES, value);
+        return this;
+    }
+    
+    public SM64MarioState positionZ(float value) {
+        segment.set(ValueLayout.JAVA_FLOAT, POSITION_OFFSET + Float.BYTES * 2, value);
+        return this;
+    }
+    
+    public SM64MarioState velocity(float x, float y, float z) {
+        segment.set(ValueLayout.JAVA_FLOAT, VELOCITY_OFFSET, x);
+        segment.set(ValueLayout.JAVA_FLOAT, VELOCITY_OFFSET + Float.BYTES, y);
+        segment.set(ValueLayout.JAVA_FLOAT, VELOCITY_OFFSET + Float.BYTES * 2, z);
+        return this;
+    }
+    
+    public SM64MarioState velocityX(float value) {
+        segment.set(ValueLayout.JAVA_FLOAT, VELOCITY_OFFSET, value);
+        return this;
+    }
+    
+    public SM64MarioState velocityY(float value) {
+        segment.set(ValueLayout.JAVA_FLOAT, VELOCITY_OFFSET + Float.BYTES, value);
+        return this;
+    }
+    
+    public SM64MarioState velocityZ(float value) {
+        segment.set(ValueLayout.JAVA_FLOAT, VELOCITY_OFFSET + Float.BYTES * 2, value);
+        return this;
+    }
+    
     public SM64MarioState faceAngle(float value) {
         FACE_ANGLE.set(segment, value);
         return this;
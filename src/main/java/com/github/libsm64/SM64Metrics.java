@@ -0,0 +1,365 @@
+package com.github.libsm64;
+
+import jdk.jfr.*;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+
+/**
+ * Optional instrumentation of the {@link SM64World SM64World} wrappers, which {@link LibSM64 LibSM64} forwards to,
+ * and of {@link MarioBatch MarioBatch} ticks. Every call is counted in a latency histogram and
+ * ticks, static surface loads and surface object calls are emitted as JFR events in the "libsm64" category.
+ * The histograms are also published as the {@code com.github.libsm64:type=Metrics} MXBean.
+ * <p>
+ * Instrumentation is enabled with {@code -Djsm64.metrics=true}. The flag is a static final constant, so when it is
+ * off the JIT removes the instrumentation from the wrappers entirely.
+ */
+public final class SM64Metrics {
+    private SM64Metrics() {
+        throw new AssertionError();
+    }
+    
+    /**
+     * True if instrumentation is enabled.
+     */
+    public static final boolean ENABLED = Boolean.getBoolean("jsm64.metrics");
+    
+    /**
+     * The name of the MXBean.
+     */
+    public static final String OBJECT_NAME = "com.github.libsm64:type=Metrics";
+    
+    /**
+     * The amount of histogram buckets, bucket n counts calls that took less than 2^n nanoseconds.
+     */
+    public static final int BUCKETS = 64;
+    
+    /**
+     * The instrumented functions.
+     */
+    public enum Function {
+        GLOBAL_INIT("sm64_global_init"),
+        GLOBAL_TERMINATE("sm64_global_terminate"),
+        STATIC_SURFACES_LOAD("sm64_static_surfaces_load"),
+        MARIO_CREATE("sm64_mario_create"),
+        MARIO_TICK("sm64_mario_tick"),
+        MARIO_DELETE("sm64_mario_delete"),
+        SURFACE_OBJECT_CREATE("sm64_surface_object_create"),
+        SURFACE_OBJECT_MOVE("sm64_surface_object_move"),
+        SURFACE_OBJECT_DELETE("sm64_surface_object_delete"),
+        ;
+        
+        private final String symbol;
+        
+        Function(String symbol) {
+            this.symbol = symbol;
+        }
+        
+        /**
+         * Gets the name of the native function.
+         *
+         * @return The native name
+         */
+        public String symbol() {
+            return symbol;
+        }
+    }
+    
+    /**
+     * A point in time copy of a histogram.
+     *
+     * @param function The function
+     * @param count The amount of calls
+     * @param totalNanos The time spent in all calls
+     * @param maxNanos The longest call
+     * @param buckets The histogram, bucket n counts calls that took less than 2^n nanoseconds
+     */
+    public record Snapshot(Function function, long count, long totalNanos, long maxNanos, long[] buckets) {
+        /**
+         * Gets the mean call time.
+         *
+         * @return The mean in nanoseconds or 0 if there were no calls
+         */
+        public double meanNanos() {
+            return count == 0 ? 0 : (double) totalNanos / count;
+        }
+        
+        /**
+         * Gets an upper bound for a percentile, accurate to a power of two.
+         *
+         * @param percentile The percentile, between 0 and 100
+         * @return The upper bound in nanoseconds or 0 if there were no calls
+         */
+        public long percentileNanos(double percentile) {
+            if (percentile < 0 || percentile > 100) {
+                throw new IllegalArgumentException("percentile must be between 0 and 100");
+            }
+            long total = 0;
+            for (var bucket : buckets) {
+                total += bucket;
+            }
+            if (total == 0) {
+                return 0;
+            }
+            
+            var target = (long) Math.ceil(total * percentile / 100);
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= Math.max(target, 1)) {
+                    return Math.min(i == 63 ? Long.MAX_VALUE : 1L << i, maxNanos);
+                }
+            }
+            return maxNanos;
+        }
+    }
+    
+    /**
+     * The management interface, every attribute is keyed by the native function name.
+     */
+    public interface MetricsMXBean {
+        Map<String, Long> getCounts();
+        
+        Map<String, Long> getTotalNanos();
+        
+        Map<String, Long> getMaxNanos();
+        
+        Map<String, Long> getP50Nanos();
+        
+        Map<String, Long> getP99Nanos();
+        
+        void reset();
+    }
+    
+    private static final class Histogram {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder total = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+        private final LongAdder[] buckets = new LongAdder[BUCKETS];
+        
+        Histogram() {
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+        
+        void record(long nanos) {
+            nanos = Math.max(nanos, 0);
+            count.increment();
+            total.add(nanos);
+            max.accumulate(nanos);
+            buckets[Math.min(BUCKETS - Long.numberOfLeadingZeros(nanos), BUCKETS - 1)].increment();
+        }
+        
+        Snapshot snapshot(Function function) {
+            var counts = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = buckets[i].sum();
+            }
+            return new Snapshot(function, count.sum(), total.sum(), max.get(), counts);
+        }
+        
+        void reset() {
+            count.reset();
+            total.reset();
+            max.reset();
+            for (var bucket : buckets) {
+                bucket.reset();
+            }
+        }
+    }
+    
+    /**
+     * Holds the histograms and registers the MXBean. It is loaded by the first recorded call or snapshot, so while
+     * instrumentation is disabled nothing is allocated and the management classes are never loaded.
+     */
+    private static final class Histograms {
+        private static final Map<Function, Histogram> HISTOGRAMS;
+        
+        static {
+            var histograms = new EnumMap<Function, Histogram>(Function.class);
+            for (var function : Function.values()) {
+                histograms.put(function, new Histogram());
+            }
+            HISTOGRAMS = Collections.unmodifiableMap(histograms);
+            
+            if (ENABLED) {
+                Bean.register();
+            }
+        }
+    }
+    
+    /**
+     * Gets the current histogram of a function.
+     *
+     * @param function The function
+     * @return A copy of the histogram
+     */
+    public static Snapshot snapshot(Function function) {
+        Objects.requireNonNull(function, "function can't be null");
+        return Histograms.HISTOGRAMS.get(function).snapshot(function);
+    }
+    
+    /**
+     * Gets the current histograms of all functions.
+     *
+     * @return A copy of every histogram
+     */
+    public static Map<Function, Snapshot> snapshot() {
+        var snapshots = new EnumMap<Function, Snapshot>(Function.class);
+        Histograms.HISTOGRAMS.forEach((function, histogram) -> snapshots.put(function, histogram.snapshot(function)));
+        return snapshots;
+    }
+    
+    /**
+     * Clears every histogram.
+     */
+    public static void reset() {
+        Histograms.HISTOGRAMS.values().forEach(Histogram::reset);
+    }
+    
+    /*
+    These are only called by the SM64World and MarioBatch wrappers when ENABLED is true. The events take the measured
+    time as a field instead of using begin/end so the wrappers only have to read the clock once.
+     */
+    
+    static void record(Function function, long start) {
+        Histograms.HISTOGRAMS.get(function).record(System.nanoTime() - start);
+    }
+    
+    static void staticSurfacesLoad(long start, long surfaceCount) {
+        var nanos = System.nanoTime() - start;
+        Histograms.HISTOGRAMS.get(Function.STATIC_SURFACES_LOAD).record(nanos);
+        var event = new StaticSurfacesLoadEvent();
+        if (event.isEnabled()) {
+            event.nanos = nanos;
+            event.surfaceCount = surfaceCount;
+            event.commit();
+        }
+    }
+    
+    static void marioTick(long start, int marioId) {
+        var nanos = System.nanoTime() - start;
+        Histograms.HISTOGRAMS.get(Function.MARIO_TICK).record(nanos);
+        var event = new MarioTickEvent();
+        if (event.isEnabled()) {
+            event.nanos = nanos;
+            event.marioId = marioId;
+            event.commit();
+        }
+    }
+    
+    static void surfaceObject(Function function, long start, long objectId) {
+        var nanos = System.nanoTime() - start;
+        Histograms.HISTOGRAMS.get(function).record(nanos);
+        var event = new SurfaceObjectEvent();
+        if (event.isEnabled()) {
+            event.nanos = nanos;
+            event.function = function.symbol();
+            event.objectId = objectId;
+            event.commit();
+        }
+    }
+    
+    @Name("com.github.libsm64.StaticSurfacesLoad")
+    @Label("Static Surfaces Load")
+    @Category("libsm64")
+    @StackTrace(false)
+    static final class StaticSurfacesLoadEvent extends Event {
+        @Label("Call Duration")
+        @Timespan(Timespan.NANOSECONDS)
+        long nanos;
+        
+        @Label("Surface Count")
+        long surfaceCount;
+    }
+    
+    @Name("com.github.libsm64.MarioTick")
+    @Label("Mario Tick")
+    @Category("libsm64")
+    @StackTrace(false)
+    static final class MarioTickEvent extends Event {
+        @Label("Call Duration")
+        @Timespan(Timespan.NANOSECONDS)
+        long nanos;
+        
+        @Label("Mario Id")
+        int marioId;
+    }
+    
+    @Name("com.github.libsm64.SurfaceObject")
+    @Label("Surface Object Call")
+    @Description("sm64_surface_object_create, sm64_surface_object_move or sm64_surface_object_delete")
+    @Category("libsm64")
+    @StackTrace(false)
+    static final class SurfaceObjectEvent extends Event {
+        @Label("Call Duration")
+        @Timespan(Timespan.NANOSECONDS)
+        long nanos;
+        
+        @Label("Function")
+        String function;
+        
+        @Label("Object Id")
+        long objectId;
+    }
+    
+    /**
+     * The MXBean, in its own class so the management classes are only loaded when it is registered.
+     */
+    private static final class Bean implements MetricsMXBean {
+        static void register() {
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(new Bean(), new ObjectName(OBJECT_NAME));
+            } catch (JMException ignored) {
+                // Usually another copy of jSM64 in a different class loader got the name first, the histograms
+                // still work through snapshot()
+            }
+        }
+        
+        private static Map<String, Long> collect(ToLongFunction<Snapshot> getter) {
+            var map = new LinkedHashMap<String, Long>();
+            snapshot().forEach((function, snapshot) -> map.put(function.symbol(), getter.applyAsLong(snapshot)));
+            return map;
+        }
+        
+        @Override
+        public Map<String, Long> getCounts() {
+            return collect(Snapshot::count);
+        }
+        
+        @Override
+        public Map<String, Long> getTotalNanos() {
+            return collect(Snapshot::totalNanos);
+        }
+        
+        @Override
+        public Map<String, Long> getMaxNanos() {
+            return collect(Snapshot::maxNanos);
+        }
+        
+        @Override
+        public Map<String, Long> getP50Nanos() {
+            return collect((snapshot) -> snapshot.percentileNanos(50));
+        }
+        
+        @Override
+        public Map<String, Long> getP99Nanos() {
+            return collect((snapshot) -> snapshot.percentileNanos(99));
+        }
+        
+        @Override
+        public void reset() {
+            SM64Metrics.reset();
+        }
+    }
+}
@@ -49,6 +49,40 @@ public record SM64ObjectTransform(MemorySegment segment) {
         return segment.asSlice(EULER_ROTATION_OFFSET, EULER_ROTATION_BYTES);
     }
     
+    public float positionX() {
+        return segment.get(ValueLayout.JAVA_FLOAT, POSITION_OFFSET);
+    }
+    
+    public float positionY() {
+        return segment.get(ValueLayout.JAVA_FLOAT, POSITION_OFFSET + Float.BYTES);
+    }
+    
+    public float positionZ() {
+        return segment.get(ValueLayout.JAVA_FLOAT, POSITION_OFFSET + Float.BYTES * 2);
+    }
+    
+    public float[] position(float[] destination) {
+        MemorySegment.copy(segment, ValueLayout.JAVA_FLOAT, POSITION_OFFSET, destination, 0, 3);
+        return destination;
+    }
+    
+    public float eulerRotationX() {
+        return segment.get(ValueLayout.JAVA_FLOAT, EULER_ROTATION_OFFSET);
+    }
+    
+    public float eulerRotationY() {
+        return segment.get(ValueLayout.JAVA_FLOAT, EULER_ROTATION_OFFSET + Float.BYTES);
+    }
+    
+    public float eulerRotationZ() {
+        return segment.get(ValueLayout.JAVA_FLOAT, EULER_ROTATION_OFFSET + Float.BYTES * 2);
+    }
+    
+    public float[] eulerRotation(float[] destination) {
+        MemorySegment.copy(segment, ValueLayout.JAVA_FLOAT, EULER_ROTATION_OFFSET, destination, 0, 3);
+        return destination;
+    }
+    
     public SM64ObjectTransform position(MemorySegment value) {
         Utils.nonNull(value, "value can't be null");
         Utils.validateSize(value, POSITION_BYTES, "value was too small");
@@ -63,6 +97,50 @@ public record SM64ObjectTransform(MemorySegment segment) {
         return this;
     }
     
+    public SM64ObjectTransform position(float x, float y, float z) {
+        segment.set(ValueLayout.JAVA_FLOAT, POSITION_OFFSET, x);
+        segment.set(ValueLayout.JAVA_FLOAT, POSITION_OFFSET + Float.BYTES, y);
+        segment.set(ValueLayout.JAVA_FLOAT, POSITION_OFFSET + Float.BYTES * 2, z);
+        return this;
+    }
+    
+    public SM64ObjectTransform positionX(float value) {
+        segment.set(ValueLayout.JAVA_FLOAT, POSITION_OFFSET, value);
+        return this;
+    }
+    
+    public SM64ObjectTransform positionY(float value) {
+        segment.set(ValueLayout.JAVA_FLOAT, POSITION_OFFSET + Float.BYTES, value);
+        return this;
+    }
+    
+    public SM64ObjectTransform positionZ(float value) {
+        segment.set(ValueLayout.JAVA_FLOAT, POSITION_OFFSET + Float.BYTES * 2, value);
+        return this;
+    }
+    
+    public SM64ObjectTransform eulerRotation(float x, float y, float z) {
+        segment.set(ValueLayout.JAVA_FLOAT, EULER_ROTATION_OFFSET, x);
+        segment.set(ValueLayout.JAVA_FLOAT, EULER_ROTATION_OFFSET + Float.BYTES, y);
+        segment.set(ValueLayout.JAVA_FLOAT, EULER_ROTATION_OFFSET + Float.BYTES * 2, z);
+        return this;
+    }
+    
+    public SM64ObjectTransform eulerRotationX(float value) {
+        segment.set(ValueLayout.JAVA_FLOAT, EULER_ROTATION_OFFSET, value);
+        return this;
+    }
+    
+    public SM64ObjectTransform eulerRotationY(float value) {
+        segment.set(ValueLayout.JAVA_FLOAT, EULER_ROTATION_OFFSET + Float.BYTES, value);
+        return this;
+    }
+    
+    public SM64ObjectTransform eulerRotationZ(float value) {
+        segment.set(ValueLayout.JAVA_FLOAT, EULER_ROTATION_OFFSET + Float.BYTES * 2, value);
+        return this;
+    }
+    
     Addressable address() {
         return segment.address();
     }
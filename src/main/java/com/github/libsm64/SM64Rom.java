@@ -0,0 +1,134 @@
+package com.github.libsm64;
+
+import com.github.libsm64.internal.Utils;
+
+import java.io.IOException;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.MemorySession;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * A memory mapped Super Mario 64 ROM, ready to be passed to
+ * {@link LibSM64#sm64_global_init(java.lang.foreign.Addressable, java.lang.foreign.Addressable, java.lang.foreign.Addressable)
+ * sm64_global_init}.
+ * <p>
+ * The ROM is mapped read only, so every process that uses the same file shares the same physical pages. Hashing the
+ * ROM means reading all of it, so the hash is remembered in a small sidecar file next to the ROM ({@code <rom>.sha256})
+ * together with the size and modification time of the ROM. Later loads of an unchanged ROM use the remembered hash.
+ *
+ * @param segment The contents of the ROM
+ * @param sha256 The SHA-256 of the ROM as upper case hex
+ */
+public record SM64Rom(MemorySegment segment, String sha256) {
+    /**
+     * The SHA-256 of the US z64 ROM, the only one libsm64 supports.
+     */
+    public static final String US_SHA256 = "17CE077343C6133F8C9F2D6D6D9A4AB62C8CD2AA57C40AEA1F490B4C8BB21D91";
+    
+    private static final String SIDECAR_EXTENSION = ".sha256";
+    
+    public SM64Rom {
+        Objects.requireNonNull(segment, "segment can't be null");
+        Objects.requireNonNull(sha256, "sha256 can't be null");
+    }
+    
+    /**
+     * Maps a ROM and checks that it is the US z64 ROM.
+     *
+     * @param path The ROM file
+     * @param session The session of the mapping
+     * @return The ROM
+     * @throws IOException If the ROM could not be read or is not the US z64 ROM
+     */
+    public static SM64Rom load(Path path, MemorySession session) throws IOException {
+        return load(path, US_SHA256, session);
+    }
+    
+    /**
+     * Maps a ROM and checks its hash.
+     *
+     * @param path The ROM file
+     * @param expectedSha256 The expected SHA-256 as hex or null to accept any ROM
+     * @param session The session of the mapping
+     * @return The ROM
+     * @throws IOException If the ROM could not be read or has the wrong hash
+     */
+    public static SM64Rom load(Path path, String expectedSha256, MemorySession session) throws IOException {
+        Objects.requireNonNull(path, "path can't be null");
+        Objects.requireNonNull(session, "session can't be null");
+        
+        var size = Files.size(path);
+        var modified = Files.getLastModifiedTime(path).toMillis();
+        
+        MemorySegment segment;
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), session);
+        }
+        
+        var sidecar = sidecar(path);
+        var hash = Utils.readSidecar(sidecar, size, modified);
+        if (hash == null) {
+            hash = hash(segment);
+            Utils.writeSidecar(sidecar, size, modified, hash);
+        }
+        
+        var rom = new SM64Rom(segment, hash);
+        if (expectedSha256 != null) {
+            rom.verify(expectedSha256);
+        }
+        return rom;
+    }
+    
+    /**
+     * Checks the hash of this ROM.
+     *
+     * @param expectedSha256 The expected SHA-256 as hex
+     * @return This ROM
+     * @throws IOException If the hash does not match
+     */
+    public SM64Rom verify(String expectedSha256) throws IOException {
+        Objects.requireNonNull(expectedSha256, "expectedSha256 can't be null");
+        
+        if (!sha256.equalsIgnoreCase(expectedSha256)) {
+            throw new IOException(
+                "ROM hash mismatch, expected " + expectedSha256.toUpperCase(Locale.ROOT) + " but got " + sha256 +
+                (expectedSha256.equalsIgnoreCase(US_SHA256) ? ", is it the US z64 SM64 ROM?" : "")
+            );
+        }
+        return this;
+    }
+    
+    /**
+     * Checks if this is the US z64 ROM.
+     *
+     * @return True if this is the US z64 ROM
+     */
+    public boolean isUs() {
+        return sha256.equals(US_SHA256);
+    }
+    
+    private static Path sidecar(Path path) {
+        return path.resolveSibling(path.getFileName() + SIDECAR_EXTENSION);
+    }
+    
+    private static String hash(MemorySegment segment) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 is mandatory, if it's missing there are larger problems.
+            throw new AssertionError(e);
+        }
+        
+        digest.update(segment.asByteBuffer());
+        return HexFormat.of().withUpperCase().formatHex(digest.digest());
+    }
+}
@@ -0,0 +1,395 @@
+package com.github.libsm64;
+
+import java.io.IOException;
+import java.lang.foreign.MemoryAddress;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.MemorySession;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Saves and restores the writable memory of a libsm64 instance on Linux. The writable mappings of the natives (their
+ * data and bss sections) are found through {@code /proc/self/maps} starting from an exported symbol.
+ * <p>
+ * <b>Restoring does not rewind Mario state.</b> libsm64 allocates the state of every Mario (its
+ * {@code GlobalState}, position, velocity, action and so on) and the loaded surfaces with {@code malloc}. That memory
+ * is shared with the rest of the process and can not be found from the outside, so only the globals of the library are
+ * covered unless the heap memory is registered with {@link #addRegion(MemorySegment) addRegion}. Restoring a savestate
+ * is only valid as long as no Mario, static surface or surface object was created or deleted since it was taken,
+ * because the pointers in the globals would no longer match the heap.
+ * <p>
+ * Savestates are stored as page deltas against a base snapshot taken when this is created (or on
+ * {@link #rebase() rebase}). Saving stores only the pages that differ from the base, restoring only writes the pages
+ * that differ from the current memory. Savestates can be preallocated with {@link #allocate(int) allocate} and reused,
+ * so saving many times a second does not allocate.
+ * <p>
+ * This is not thread safe and nothing may call into the instance while saving or restoring.
+ */
+public final class SM64Savestates implements AutoCloseable {
+    private static final long PAGE_SIZE = 4096;
+    private static final int PT_LOAD = 1;
+    private static final int PF_W = 2;
+    private static final long ELF_HEADER_BYTES = 64;
+    private static final ValueLayout.OfShort ELF_SHORT = ValueLayout.JAVA_SHORT.withOrder(ByteOrder.LITTLE_ENDIAN);
+    private static final ValueLayout.OfInt ELF_INT = ValueLayout.JAVA_INT.withOrder(ByteOrder.LITTLE_ENDIAN);
+    private static final ValueLayout.OfLong ELF_LONG = ValueLayout.JAVA_LONG.withOrder(ByteOrder.LITTLE_ENDIAN);
+    
+    /**
+     * A saved state, only the pages that differ from the base snapshot are stored.
+     */
+    public final class Savestate implements AutoCloseable {
+        private MemorySession session;
+        private MemorySegment pages;
+        private int capacity;
+        private int count;
+        private int[] slots;
+        private final long generation;
+        private boolean saved;
+        
+        private Savestate(int capacity) {
+            generation = SM64Savestates.this.generation;
+            slots = new int[pageCount];
+            Arrays.fill(slots, -1);
+            reserve(Math.max(capacity, 1));
+        }
+        
+        /**
+         * Makes room for at least the provided amount of pages, keeping the stored ones.
+         */
+        private void reserve(int required) {
+            if (required <= capacity) {
+                return;
+            }
+            var newCapacity = Math.max(required, capacity * 2);
+            var newSession = MemorySession.openConfined();
+            var newPages = newSession.allocate(newCapacity * PAGE_SIZE, PAGE_SIZE);
+            if (session != null) {
+                newPages.asSlice(0, count * PAGE_SIZE).copyFrom(pages.asSlice(0, count * PAGE_SIZE));
+                session.close();
+            }
+            session = newSession;
+            pages = newPages;
+            capacity = newCapacity;
+        }
+        
+        private SM64Savestates owner() {
+            return SM64Savestates.this;
+        }
+        
+        /**
+         * Gets the amount of pages that differ from the base snapshot.
+         *
+         * @return The amount of stored pages
+         */
+        public int storedPages() {
+            return count;
+        }
+        
+        /**
+         * Frees the buffer of this savestate.
+         */
+        @Override
+        public void close() {
+            session.close();
+        }
+    }
+    
+    private final List<MemorySegment> regions = new ArrayList<>();
+    private MemorySession session;
+    private MemorySegment base;
+    private int pageCount;
+    private long generation;
+    
+    /**
+     * Finds the writable memory of the shared libsm64 instance.
+     *
+     * @throws IOException If the memory maps could not be read
+     */
+    public SM64Savestates() throws IOException {
+        this(SM64World.global());
+    }
+    
+    /**
+     * Finds the writable memory of a libsm64 instance.
+     *
+     * @param world The instance
+     * @throws IOException If the memory maps could not be read
+     */
+    public SM64Savestates(SM64World world) throws IOException {
+        Objects.requireNonNull(world, "world can't be null");
+        
+        regions.addAll(writableRegions(world.symbol("sm64_global_init").toRawLongValue()));
+        if (regions.isEmpty()) {
+            throw new IOException("Failed to find the writable memory of libsm64");
+        }
+        rebase();
+    }
+    
+    /**
+     * Adds a region of memory that should be part of every savestate, like memory that is known to belong to
+     * libsm64. Existing savestates become invalid and a new base snapshot is taken.
+     *
+     * @param region The memory region
+     */
+    public void addRegion(MemorySegment region) {
+        Objects.requireNonNull(region, "region can't be null");
+        regions.add(region);
+        rebase();
+    }
+    
+    /**
+     * Takes a new base snapshot. Savestates that differ a lot from the base get large, rebasing at a state close to
+     * the ones that are saved keeps them small. Existing savestates become invalid.
+     */
+    public void rebase() {
+        long total = 0;
+        for (var region : regions) {
+            total += pageAlign(region.byteSize());
+        }
+        pageCount = Math.toIntExact(total / PAGE_SIZE);
+        
+        if (session != null) {
+            session.close();
+        }
+        session = MemorySession.openConfined();
+        base = session.allocate(total, PAGE_SIZE);
+        long offset = 0;
+        for (var region : regions) {
+            base.asSlice(offset, region.byteSize()).copyFrom(region);
+            offset += pageAlign(region.byteSize());
+        }
+        generation++;
+    }
+    
+    /**
+     * Allocates a savestate buffer so saving into it later does not have to allocate.
+     *
+     * @param capacity The amount of changed pages it can hold before it grows
+     * @return A new savestate holding the base snapshot
+     */
+    public Savestate allocate(int capacity) {
+        var savestate = new Savestate(capacity);
+        savestate.saved = true;
+        return savestate;
+    }
+    
+    /**
+     * Saves the current state into a new savestate.
+     *
+     * @return The savestate
+     */
+    public Savestate save() {
+        var savestate = new Savestate(16);
+        save(savestate);
+        return savestate;
+    }
+    
+    /**
+     * Saves the current state into an existing savestate, reusing its buffer.
+     *
+     * @param savestate The savestate to overwrite
+     */
+    public void save(Savestate savestate) {
+        validate(savestate, false);
+        
+        Arrays.fill(savestate.slots, -1);
+        savestate.count = 0;
+        int page = 0;
+        long offset = 0;
+        for (var region : regions) {
+            for (long regionOffset = 0; regionOffset < region.byteSize(); regionOffset += PAGE_SIZE, page++) {
+                var size = Math.min(PAGE_SIZE, region.byteSize() - regionOffset);
+                var current = region.asSlice(regionOffset, size);
+                if (current.mismatch(base.asSlice(offset + regionOffset, size)) != -1) {
+                    savestate.reserve(savestate.count + 1);
+                    var slot = savestate.count++;
+                    savestate.pages.asSlice(slot * PAGE_SIZE, size).copyFrom(current);
+                    savestate.slots[page] = slot;
+                }
+            }
+            offset += pageAlign(region.byteSize());
+        }
+        savestate.saved = true;
+    }
+    
+    /**
+     * Restores a savestate, only pages that differ from it are written.
+     *
+     * @param savestate The savestate to restore
+     * @return The amount of pages that were written
+     */
+    public int restore(Savestate savestate) {
+        validate(savestate, true);
+        
+        int written = 0;
+        int page = 0;
+        long offset = 0;
+        for (var region : regions) {
+            for (long regionOffset = 0; regionOffset < region.byteSize(); regionOffset += PAGE_SIZE, page++) {
+                var size = Math.min(PAGE_SIZE, region.byteSize() - regionOffset);
+                var slot = savestate.slots[page];
+                var source = slot < 0 ? base.asSlice(offset + regionOffset, size) : savestate.pages.asSlice(slot * PAGE_SIZE, size);
+                var current = region.asSlice(regionOffset, size);
+                if (current.mismatch(source) != -1) {
+                    current.copyFrom(source);
+                    written++;
+                }
+            }
+            offset += pageAlign(region.byteSize());
+        }
+        return written;
+    }
+    
+    /**
+     * Gets the amount of memory covered by every savestate.
+     *
+     * @return The size in bytes
+     */
+    public long bytes() {
+        return pageCount * PAGE_SIZE;
+    }
+    
+    /**
+     * Frees the base snapshot. Savestates have to be closed on their own.
+     */
+    @Override
+    public void close() {
+        session.close();
+    }
+    
+    private void validate(Savestate savestate, boolean requireSaved) {
+        Objects.requireNonNull(savestate, "savestate can't be null");
+        if (savestate.owner() != this) {
+            throw new IllegalArgumentException("savestate belongs to a different SM64Savestates");
+        }
+        if (savestate.generation != generation) {
+            throw new IllegalStateException("savestate was taken before the last rebase");
+        }
+        if (requireSaved && !savestate.saved) {
+            throw new IllegalStateException("savestate was never saved");
+        }
+    }
+    
+    private static long pageAlign(long size) {
+        return (size + PAGE_SIZE - 1) & -PAGE_SIZE;
+    }
+    
+    /**
+     * Finds every writable mapping of the file that contains an address, plus the anonymous mapping right after it
+     * that holds the rest of the bss section. The kernel merges neighbouring anonymous mappings, so everything is
+     * clipped to the end of the writable segments in the program headers of the library.
+     */
+    private static List<MemorySegment> writableRegions(long address) throws IOException {
+        record Mapping(long start, long end, String permissions, long offset, String path) {}
+        
+        var mappings = new ArrayList<Mapping>();
+        for (var line : Files.readAllLines(Path.of("/proc/self/maps"))) {
+            // start-end perms offset dev inode path
+            var parts = line.trim().split("\\s+", 6);
+            if (parts.length < 5) {
+                continue;
+            }
+            var range = parts[0].split("-");
+            mappings.add(new Mapping(
+                Long.parseUnsignedLong(range[0], 16),
+                Long.parseUnsignedLong(range[1], 16),
+                parts[1],
+                Long.parseUnsignedLong(parts[2], 16),
+                parts.length == 6 ? parts[5] : ""
+            ));
+        }
+        
+        String library = null;
+        for (var mapping : mappings) {
+            if (Long.compareUnsigned(address, mapping.start()) >= 0 && Long.compareUnsigned(address, mapping.end()) < 0) {
+                library = mapping.path();
+                break;
+            }
+        }
+        if (library == null || library.isEmpty()) {
+            throw new IOException("Failed to find the mapping of libsm64");
+        }
+        
+        // Isolated worlds delete their copy of the natives after loading it, so the headers are read from memory. The
+        // first mapping of the file starts with the ELF header and the program headers.
+        Mapping image = null;
+        for (var mapping : mappings) {
+            if (mapping.path().equals(library) && mapping.offset() == 0) {
+                image = mapping;
+                break;
+            }
+        }
+        if (image == null) {
+            throw new IOException("Failed to find the load address of libsm64");
+        }
+        var writableEnd = pageAlign(image.start() + writableEnd(MemorySegment.ofAddress(
+            MemoryAddress.ofLong(image.start()),
+            image.end() - image.start(),
+            MemorySession.global()
+        )));
+        
+        var regions = new ArrayList<MemorySegment>();
+        long previousEnd = -1;
+        for (var mapping : mappings) {
+            var isLibrary = mapping.path().equals(library);
+            var isBssTail = mapping.path().isEmpty() && mapping.start() == previousEnd;
+            var end = Math.min(mapping.end(), writableEnd);
+            if ((isLibrary || isBssTail) && mapping.permissions().startsWith("rw") && mapping.start() < end) {
+                regions.add(MemorySegment.ofAddress(
+                    MemoryAddress.ofLong(mapping.start()),
+                    end - mapping.start(),
+                    MemorySession.global()
+                ));
+            }
+            previousEnd = isLibrary ? mapping.end() : -1;
+        }
+        return regions;
+    }
+    
+    /**
+     * Reads the end of the last writable loadable segment from the program headers of a 64 bit little endian ELF
+     * image, relative to the load address. This is where the bss section ends, the same place as its {@code _end}.
+     */
+    private static long writableEnd(MemorySegment image) throws IOException {
+        if (
+            image.byteSize() < ELF_HEADER_BYTES ||
+            image.get(ELF_INT, 0) != 0x464C457F ||
+            image.get(ValueLayout.JAVA_BYTE, 4) != 2 ||
+            image.get(ValueLayout.JAVA_BYTE, 5) != 1
+        ) {
+            throw new IOException("libsm64 is not a 64 bit little endian ELF image");
+        }
+        var programHeaders = image.get(ELF_LONG, 0x20);
+        var entrySize = Short.toUnsignedInt(image.get(ELF_SHORT, 0x36));
+        var entries = Short.toUnsignedInt(image.get(ELF_SHORT, 0x38));
+        if (programHeaders < 0 || programHeaders + (long) entrySize * entries > image.byteSize()) {
+            throw new IOException("The program headers of libsm64 are not mapped");
+        }
+        
+        long firstAddress = -1;
+        long end = -1;
+        for (int i = 0; i < entries; i++) {
+            var entry = programHeaders + (long) i * entrySize;
+            if (image.get(ELF_INT, entry) != PT_LOAD) {
+                continue;
+            }
+            var virtualAddress = image.get(ELF_LONG, entry + 16);
+            if (firstAddress == -1) {
+                firstAddress = virtualAddress & -PAGE_SIZE;
+            }
+            if ((image.get(ELF_INT, entry + 4) & PF_W) != 0) {
+                end = Math.max(end, virtualAddress + image.get(ELF_LONG, entry + 40));
+            }
+        }
+        if (end == -1) {
+            throw new IOException("libsm64 has no writable segment");
+        }
+        return end - firstAddress;
+    }
+}
@@ -112,6 +112,11 @@ public record SM64Surface(MemorySegment segment) {
             this.segment = MemorySegment.ofAddress(address, bytes(), MemorySession.global());
         }
         
+        Buffer(MemorySegment segment) {
+            this.size = segment.byteSize() / BYTES;
+            this.segment = segment;
+        }
+        
         public SM64Surface get(int index) {
             Objects.checkIndex(index, size);
             
@@ -126,6 +131,10 @@ public record SM64Surface(MemorySegment segment) {
             return size * BYTES;
         }
         
+        MemorySegment segment() {
+            return segment;
+        }
+        
         Addressable address() {
             return segment.address();
         }
@@ -0,0 +1,130 @@
+package com.github.libsm64;
+
+import com.github.libsm64.internal.Utils;
+
+import java.io.IOException;
+import java.lang.foreign.MemoryLayout;
+import java.lang.foreign.MemorySession;
+import java.lang.invoke.VarHandle;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+
+/**
+ * A precompiled static surface file that can be memory mapped straight into a {@link SM64Surface.Buffer Buffer}, so
+ * loading a level is a single mmap followed by {@link LibSM64#sm64_static_surfaces_load(SM64Surface.Buffer)
+ * sm64_static_surfaces_load}.
+ * <p>
+ * The file is a small header followed by the raw {@link SM64Surface SM64Surface} array in native byte order. Files are
+ * not portable between platforms with different byte orders.
+ */
+public final class SM64SurfaceCache {
+    private SM64SurfaceCache() {
+        throw new AssertionError();
+    }
+    
+    private static final int MAGIC = 0x46525553; // SURF
+    private static final short VERSION = 1;
+    private static final short BYTE_ORDER_MARK = (short) 0xFEFF;
+    
+    /*
+    struct SM64SurfaceCacheHeader
+    {
+        uint32_t magic;
+        uint16_t version;
+        uint16_t byteOrderMark;
+        uint32_t surfaceBytes;
+        uint32_t reserved;
+        uint64_t surfaceCount;
+    };
+     */
+    private static final MemoryLayout HEADER_LAYOUT = Utils.struct(
+        Utils.u32("magic"),
+        Utils.u16("version"),
+        Utils.u16("byteOrderMark"),
+        Utils.u32("surfaceBytes"),
+        Utils.u32("reserved"),
+        Utils.u64("surfaceCount")
+    );
+    private static final long HEADER_BYTES = HEADER_LAYOUT.byteSize();
+    
+    private static final VarHandle MAGIC_HANDLE = Utils.varHandle(HEADER_LAYOUT, "magic");
+    private static final VarHandle VERSION_HANDLE = Utils.varHandle(HEADER_LAYOUT, "version");
+    private static final VarHandle BYTE_ORDER_MARK_HANDLE = Utils.varHandle(HEADER_LAYOUT, "byteOrderMark");
+    private static final VarHandle SURFACE_BYTES = Utils.varHandle(HEADER_LAYOUT, "surfaceBytes");
+    private static final VarHandle SURFACE_COUNT = Utils.varHandle(HEADER_LAYOUT, "surfaceCount");
+    
+    /**
+     * Writes a surface buffer to a cache file, replacing the file if it exists.
+     *
+     * @param path The file to write
+     * @param surfaces The surfaces to write
+     * @throws IOException If the file could not be written
+     */
+    public static void write(Path path, SM64Surface.Buffer surfaces) throws IOException {
+        Objects.requireNonNull(path, "path can't be null");
+        Objects.requireNonNull(surfaces, "surfaces can't be null");
+        
+        try (
+            var session = MemorySession.openConfined();
+            var channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)
+        ) {
+            var file = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + surfaces.bytes(), session);
+            file.asSlice(HEADER_BYTES).copyFrom(surfaces.segment().asSlice(0, surfaces.bytes()));
+            
+            var header = file.asSlice(0, HEADER_BYTES);
+            MAGIC_HANDLE.set(header, MAGIC);
+            VERSION_HANDLE.set(header, VERSION);
+            BYTE_ORDER_MARK_HANDLE.set(header, BYTE_ORDER_MARK);
+            SURFACE_BYTES.set(header, (int) SM64Surface.BYTES);
+            SURFACE_COUNT.set(header, surfaces.size());
+            
+            file.force();
+        }
+    }
+    
+    /**
+     * Maps a cache file into memory without copying it. The returned buffer is read only and stays valid as long as the
+     * provided session.
+     *
+     * @param path The file to map
+     * @param session The session of the mapping
+     * @return The mapped surfaces
+     * @throws IOException If the file could not be read or is not a valid cache file
+     */
+    public static SM64Surface.Buffer map(Path path, MemorySession session) throws IOException {
+        Objects.requireNonNull(path, "path can't be null");
+        Objects.requireNonNull(session, "session can't be null");
+        
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            var size = channel.size();
+            if (size < HEADER_BYTES) {
+                throw new IOException("Surface cache " + path + " is truncated");
+            }
+            
+            var file = channel.map(FileChannel.MapMode.READ_ONLY, 0, size, session);
+            var header = file.asSlice(0, HEADER_BYTES);
+            if ((int) MAGIC_HANDLE.get(header) != MAGIC) {
+                throw new IOException(path + " is not a surface cache");
+            }
+            if ((short) BYTE_ORDER_MARK_HANDLE.get(header) != BYTE_ORDER_MARK) {
+                throw new IOException("Surface cache " + path + " was written on a platform with a different byte order");
+            }
+            var version = (short) VERSION_HANDLE.get(header);
+            if (version != VERSION) {
+                throw new IOException("Unsupported surface cache version " + version + " in " + path);
+            }
+            var surfaceBytes = (int) SURFACE_BYTES.get(header);
+            if (surfaceBytes != SM64Surface.BYTES) {
+                throw new IOException("Surface cache " + path + " has " + surfaceBytes + " byte surfaces, expected " + SM64Surface.BYTES);
+            }
+            var count = (long) SURFACE_COUNT.get(header);
+            if (count < 0 || count > (size - HEADER_BYTES) / SM64Surface.BYTES) {
+                throw new IOException("Surface cache " + path + " is truncated");
+            }
+            
+            return new SM64Surface.Buffer(file.asSlice(HEADER_BYTES, count * SM64Surface.BYTES));
+        }
+    }
+}
@@ -53,7 +53,7 @@ public record SM64SurfaceObject(MemorySegment segment) {
     }
     
     public SM64Surface.Buffer surfaces() {
-        return new SM64Surface.Buffer((int) surfaceCount(), (SegmentAllocator) SURFACES.get(segment));
+        return new SM64Surface.Buffer(surfaceCount(), (MemoryAddress) SURFACES.get(segment));
     }
     
     public SM64SurfaceObject transform(SM64ObjectTransform value) {
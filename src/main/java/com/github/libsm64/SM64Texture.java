@@ -0,0 +1,289 @@
+package com.github.libsm64;
+
+import com.github.libsm64.internal.Utils;
+
+import java.io.IOException;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * Converts the texture atlas written by
+ * {@link LibSM64#sm64_global_init(java.lang.foreign.Addressable, java.lang.foreign.Addressable, java.lang.foreign.Addressable)
+ * sm64_global_init} into the formats used by GPUs and AWT, and caches it on disk so tools that only need the texture
+ * don't have to initialize libsm64 at all.
+ * <p>
+ * The atlas is {@link LibSM64#SM64_TEXTURE_WIDTH SM64_TEXTURE_WIDTH} by
+ * {@link LibSM64#SM64_TEXTURE_HEIGHT SM64_TEXTURE_HEIGHT} pixels stored as RGBA bytes. ARGB pixels are ints in the
+ * layout used by {@code BufferedImage.TYPE_INT_ARGB}.
+ */
+public final class SM64Texture {
+    private SM64Texture() {
+        throw new AssertionError();
+    }
+    
+    /**
+     * The amount of pixels in the atlas.
+     */
+    public static final int PIXELS = LibSM64.SM64_TEXTURE_WIDTH * LibSM64.SM64_TEXTURE_HEIGHT;
+    
+    /**
+     * The size of the atlas in bytes.
+     */
+    public static final int BYTES = PIXELS * Integer.BYTES;
+    
+    /**
+     * Reads pixels as 0xRRGGBBAA regardless of the platform byte order.
+     */
+    private static final ValueLayout.OfInt PIXEL = ValueLayout.JAVA_INT.withOrder(ByteOrder.BIG_ENDIAN);
+    
+    /**
+     * Writes pixels as 0xRRGGBBAA into byte arrays, which have no int alignment.
+     */
+    private static final ValueLayout.OfInt BYTE_PIXEL = PIXEL.withBitAlignment(8);
+    
+    private static final int CACHE_MAGIC = 0x41544C53; // ATLS
+    private static final int CACHE_HEADER_BYTES = Integer.BYTES * 3;
+    private static final String CACHE_EXTENSION = ".atlas";
+    
+    /*
+    The conversion loops below are plain loops over ints on purpose, C2 turns the shifts and byte reversals into SIMD
+    instructions on its own.
+     */
+    
+    /**
+     * Converts the atlas to ARGB ints.
+     *
+     * @param atlas The atlas written by sm64_global_init
+     * @return The ARGB pixels
+     */
+    public static int[] argb(MemorySegment atlas) {
+        return argb(atlas, new int[PIXELS]);
+    }
+    
+    /**
+     * Converts the atlas to ARGB ints.
+     *
+     * @param atlas The atlas written by sm64_global_init
+     * @param destination The array to write to, at least {@link #PIXELS PIXELS} long
+     * @return The destination
+     */
+    public static int[] argb(MemorySegment atlas, int[] destination) {
+        checkAtlas(atlas);
+        checkPixels(destination, "destination");
+        
+        MemorySegment.copy(atlas, PIXEL, 0, destination, 0, PIXELS);
+        for (int i = 0; i < PIXELS; i++) {
+            destination[i] = Integer.rotateRight(destination[i], 8);
+        }
+        return destination;
+    }
+    
+    /**
+     * Converts ARGB pixels to RGBA bytes, the layout of the atlas and of most GPU RGBA8 formats.
+     *
+     * @param argb The ARGB pixels
+     * @param destination The array to write to, at least four bytes per pixel
+     * @return The destination
+     */
+    public static byte[] rgba(int[] argb, byte[] destination) {
+        return pack(argb, destination, false);
+    }
+    
+    /**
+     * Converts ARGB pixels to BGRA bytes, the layout of GPU BGRA8 formats.
+     *
+     * @param argb The ARGB pixels
+     * @param destination The array to write to, at least four bytes per pixel
+     * @return The destination
+     */
+    public static byte[] bgra(int[] argb, byte[] destination) {
+        return pack(argb, destination, true);
+    }
+    
+    /**
+     * Converts the atlas to BGRA bytes.
+     *
+     * @param atlas The atlas written by sm64_global_init
+     * @param destination The array to write to, at least {@link #BYTES BYTES} long
+     * @return The destination
+     */
+    public static byte[] bgra(MemorySegment atlas, byte[] destination) {
+        checkAtlas(atlas);
+        Objects.requireNonNull(destination, "destination can't be null");
+        if (destination.length < BYTES) {
+            throw new IllegalArgumentException("destination was too small");
+        }
+        
+        var output = MemorySegment.ofArray(destination);
+        for (int i = 0; i < PIXELS; i++) {
+            output.setAtIndex(BYTE_PIXEL, i, Integer.rotateLeft(Integer.reverseBytes(atlas.getAtIndex(PIXEL, i)), 8));
+        }
+        return destination;
+    }
+    
+    private static byte[] pack(int[] argb, byte[] destination, boolean bgra) {
+        Objects.requireNonNull(argb, "argb can't be null");
+        Objects.requireNonNull(destination, "destination can't be null");
+        if (destination.length < (long) argb.length * Integer.BYTES) {
+            throw new IllegalArgumentException("destination was too small");
+        }
+        
+        var output = MemorySegment.ofArray(destination);
+        if (bgra) {
+            for (int i = 0; i < argb.length; i++) {
+                output.setAtIndex(BYTE_PIXEL, i, Integer.reverseBytes(argb[i]));
+            }
+        } else {
+            for (int i = 0; i < argb.length; i++) {
+                output.setAtIndex(BYTE_PIXEL, i, Integer.rotateLeft(argb[i], 8));
+            }
+        }
+        return destination;
+    }
+    
+    /**
+     * Halves an image with a 2x2 box filter. Works on any format with four 8 bit channels per int. Odd sizes are
+     * rounded up, the last row or column is reused.
+     *
+     * @param pixels The pixels of the image
+     * @param width The width of the image
+     * @param height The height of the image
+     * @return The pixels of the next mip level
+     */
+    public static int[] mipmap(int[] pixels, int width, int height) {
+        Objects.requireNonNull(pixels, "pixels can't be null");
+        if (width <= 0 || height <= 0 || (long) width * height > pixels.length) {
+            throw new IllegalArgumentException("Invalid image size " + width + "x" + height);
+        }
+        
+        var nextWidth = Math.max((width + 1) >> 1, 1);
+        var nextHeight = Math.max((height + 1) >> 1, 1);
+        var next = new int[nextWidth * nextHeight];
+        for (int y = 0; y < nextHeight; y++) {
+            var row0 = Math.min(y * 2, height - 1) * width;
+            var row1 = Math.min(y * 2 + 1, height - 1) * width;
+            var out = y * nextWidth;
+            for (int x = 0; x < nextWidth; x++) {
+                var x0 = Math.min(x * 2, width - 1);
+                var x1 = Math.min(x * 2 + 1, width - 1);
+                next[out + x] = average(pixels[row0 + x0], pixels[row0 + x1], pixels[row1 + x0], pixels[row1 + x1]);
+            }
+        }
+        return next;
+    }
+    
+    /**
+     * Creates the full mip chain of an image, down to 1x1.
+     *
+     * @param pixels The pixels of the image
+     * @param width The width of the image
+     * @param height The height of the image
+     * @return Every mip level, starting with the provided pixels
+     */
+    public static int[][] mipmaps(int[] pixels, int width, int height) {
+        // ceil(log2(max)) halvings reach 1x1 because odd sizes are rounded up
+        var levels = 32 - Integer.numberOfLeadingZeros(Math.max(width, height) - 1) + 1;
+        var chain = new int[levels][];
+        chain[0] = pixels;
+        for (int level = 1; level < levels; level++) {
+            chain[level] = mipmap(chain[level - 1], width, height);
+            width = Math.max((width + 1) >> 1, 1);
+            height = Math.max((height + 1) >> 1, 1);
+        }
+        return chain;
+    }
+    
+    /**
+     * Averages four pixels per channel with rounding. The even and odd bytes are summed in separate ints so every
+     * channel has ten bits of headroom.
+     */
+    private static int average(int a, int b, int c, int d) {
+        var even = (a & 0x00FF00FF) + (b & 0x00FF00FF) + (c & 0x00FF00FF) + (d & 0x00FF00FF) + 0x00020002;
+        var odd = ((a >>> 8) & 0x00FF00FF) + ((b >>> 8) & 0x00FF00FF) + ((c >>> 8) & 0x00FF00FF) + ((d >>> 8) & 0x00FF00FF) + 0x00020002;
+        return ((even >>> 2) & 0x00FF00FF) | (((odd >>> 2) & 0x00FF00FF) << 8);
+    }
+    
+    /**
+     * Gets the ARGB atlas for a ROM from a cache directory. If it is not cached yet the atlas is requested from the
+     * supplier, which usually initializes libsm64, converted and written to the cache.
+     *
+     * @param directory The cache directory
+     * @param rom The ROM the atlas belongs to
+     * @param atlas Supplies the atlas written by sm64_global_init on a cache miss
+     * @return The ARGB pixels
+     * @throws IOException If the cache could not be written
+     */
+    public static int[] cachedArgb(Path directory, SM64Rom rom, Supplier<MemorySegment> atlas) throws IOException {
+        Objects.requireNonNull(directory, "directory can't be null");
+        Objects.requireNonNull(rom, "rom can't be null");
+        Objects.requireNonNull(atlas, "atlas can't be null");
+        
+        var file = directory.resolve(rom.sha256() + CACHE_EXTENSION);
+        var cached = readCache(file);
+        if (cached != null) {
+            return cached;
+        }
+        
+        var pixels = argb(atlas.get());
+        writeCache(directory, file, pixels);
+        return pixels;
+    }
+    
+    private static int[] readCache(Path file) throws IOException {
+        byte[] data;
+        try {
+            data = Files.readAllBytes(file);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        if (data.length != CACHE_HEADER_BYTES + BYTES) {
+            return null;
+        }
+        
+        var buffer = ByteBuffer.wrap(data).order(ByteOrder.BIG_ENDIAN);
+        if (
+            buffer.getInt() != CACHE_MAGIC ||
+            buffer.getInt() != LibSM64.SM64_TEXTURE_WIDTH ||
+            buffer.getInt() != LibSM64.SM64_TEXTURE_HEIGHT
+        ) {
+            return null;
+        }
+        
+        var pixels = new int[PIXELS];
+        buffer.asIntBuffer().get(pixels);
+        return pixels;
+    }
+    
+    private static void writeCache(Path directory, Path file, int[] pixels) throws IOException {
+        var buffer = ByteBuffer.allocate(CACHE_HEADER_BYTES + BYTES).order(ByteOrder.BIG_ENDIAN);
+        buffer.putInt(CACHE_MAGIC)
+            .putInt(LibSM64.SM64_TEXTURE_WIDTH)
+            .putInt(LibSM64.SM64_TEXTURE_HEIGHT)
+            .asIntBuffer()
+            .put(pixels);
+        
+        Files.createDirectories(directory);
+        Utils.writeAtomically(file, buffer.array());
+    }
+    
+    private static void checkAtlas(MemorySegment atlas) {
+        Objects.requireNonNull(atlas, "atlas can't be null");
+        if (atlas.byteSize() < BYTES) {
+            throw new IllegalArgumentException("atlas was too small");
+        }
+    }
+    
+    private static void checkPixels(int[] pixels, String name) {
+        Objects.requireNonNull(pixels, name + " can't be null");
+        if (pixels.length < PIXELS) {
+            throw new IllegalArgumentException(name + " was too small");
+        }
+    }
+}
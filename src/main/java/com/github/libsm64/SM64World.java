@@ -0,0 +1,301 @@
+package com.github.libsm64;
+
+import com.github.libsm64.internal.Binder;
+import com.github.libsm64.internal.Utils;
+
+import java.lang.foreign.Addressable;
+import java.lang.foreign.MemoryAddress;
+import java.lang.foreign.MemoryLayout;
+import java.lang.invoke.MethodHandle;
+
+/**
+ * An instance of libsm64 with its own set of globals. Every world created with {@link #create() create} loads its own
+ * copy of the natives, so different worlds can be used from different threads at the same time. A single world is
+ * still not thread safe.
+ * <p>
+ * The {@link #global() global} world uses the shared natives, {@link LibSM64 LibSM64} forwards every call to it so
+ * both share the same handles and state. Handles are linked on the first call of their function.
+ */
+public final class SM64World implements AutoCloseable {
+    /**
+     * Lazy holder for the shared world.
+     */
+    private static final class Global {
+        private static final SM64World INSTANCE = new SM64World(Binder.load(), true);
+    }
+    
+    /**
+     * Gets the world backed by the shared natives, this is the same instance of libsm64 that {@link LibSM64 LibSM64}
+     * uses.
+     *
+     * @return The shared world
+     */
+    public static SM64World global() {
+        return Global.INSTANCE;
+    }
+    
+    /**
+     * Loads a new copy of libsm64 that is independent of every other world.
+     *
+     * @return The new world
+     * @throws RuntimeException If the natives could not be loaded
+     */
+    public static SM64World create() {
+        return new SM64World(Binder.loadIsolated(), false);
+    }
+    
+    private final Binder binder;
+    
+    /**
+     * Set for the {@link #global() global} world.
+     */
+    private final boolean shared;
+    
+    /*
+    Linked on first use by the accessors below. Two threads racing on the first call both link the same function,
+    which is harmless, so the fields don't need to be volatile.
+     */
+    private MethodHandle globalInit;
+    private MethodHandle globalTerminate;
+    private MethodHandle staticSurfacesLoad;
+    private MethodHandle marioCreate;
+    private MethodHandle marioTick;
+    private MethodHandle marioDelete;
+    private MethodHandle surfaceObjectCreate;
+    private MethodHandle surfaceObjectMove;
+    private MethodHandle surfaceObjectDelete;
+    
+    /**
+     * Set while sm64_global_init has been called without a matching sm64_global_terminate.
+     */
+    private boolean initialized;
+    
+    private SM64World(Binder binder, boolean shared) {
+        this.binder = binder;
+        this.shared = shared;
+    }
+    
+    public void sm64_global_init(Addressable rom, Addressable outTexture, Addressable debugPrintFunction) {
+        var start = SM64Metrics.ENABLED ? System.nanoTime() : 0;
+        try {
+            globalInit().invokeExact(rom, outTexture, debugPrintFunction);
+        } catch (Throwable e) {
+            throw new RuntimeException("Failed to execute sm64_global_init", e);
+        }
+        initialized = true;
+        if (SM64Metrics.ENABLED) {
+            SM64Metrics.record(SM64Metrics.Function.GLOBAL_INIT, start);
+        }
+    }
+    
+    public void sm64_global_terminate() {
+        var start = SM64Metrics.ENABLED ? System.nanoTime() : 0;
+        try {
+            globalTerminate().invokeExact();
+        } catch (Throwable e) {
+            throw new RuntimeException("Failed to execute sm64_global_terminate", e);
+        }
+        initialized = false;
+        if (SM64Metrics.ENABLED) {
+            SM64Metrics.record(SM64Metrics.Function.GLOBAL_TERMINATE, start);
+        }
+    }
+    
+    public void sm64_static_surfaces_load(SM64Surface.Buffer surfaceArray) {
+        var start = SM64Metrics.ENABLED ? System.nanoTime() : 0;
+        try {
+            staticSurfacesLoad().invokeExact(surfaceArray.address(), (int) (surfaceArray.size() & 0x00000000_FFFFFFFFL));
+        } catch (Throwable e) {
+            throw new RuntimeException("Failed to execute sm64_static_surfaces_load", e);
+        }
+        if (SM64Metrics.ENABLED) {
+            SM64Metrics.staticSurfacesLoad(start, surfaceArray.size());
+        }
+    }
+    
+    public int sm64_mario_create(short x, short y, short z) {
+        var start = SM64Metrics.ENABLED ? System.nanoTime() : 0;
+        int marioId;
+        try {
+            marioId = (int) marioCreate().invokeExact(x, y, z);
+        } catch (Throwable e) {
+            throw new RuntimeException("Failed to execute sm64_mario_create", e);
+        }
+        if (SM64Metrics.ENABLED) {
+            SM64Metrics.record(SM64Metrics.Function.MARIO_CREATE, start);
+        }
+        return marioId;
+    }
+    
+    public void sm64_mario_tick(int marioId, SM64MarioInputs inputs, SM64MarioState outState, SM64MarioGeometryBuffers outBuffers) {
+        var start = SM64Metrics.ENABLED ? System.nanoTime() : 0;
+        try {
+            marioTick().invokeExact(marioId, inputs.address(), outState.address(), outBuffers.address());
+        } catch (Throwable e) {
+            throw new RuntimeException("Failed to execute sm64_mario_tick", e);
+        }
+        if (SM64Metrics.ENABLED) {
+            SM64Metrics.marioTick(start, marioId);
+        }
+    }
+    
+    /**
+     * Ticks a Mario without keeping its geometry, for Marios that are not rendered. libsm64 still generates the
+     * geometry, it is written into a per thread scratch buffer that is never read.
+     *
+     * @param marioId The id of the Mario
+     * @param inputs The inputs for this tick
+     * @param outState Receives the new state
+     */
+    public void sm64_mario_tick(int marioId, SM64MarioInputs inputs, SM64MarioState outState) {
+        sm64_mario_tick(marioId, inputs, outState, SM64MarioGeometryBuffers.scratch());
+    }
+    
+    public void sm64_mario_delete(int marioId) {
+        var start = SM64Metrics.ENABLED ? System.nanoTime() : 0;
+        try {
+            marioDelete().invokeExact(marioId);
+        } catch (Throwable e) {
+            throw new RuntimeException("Failed to execute sm64_mario_delete", e);
+        }
+        if (SM64Metrics.ENABLED) {
+            SM64Metrics.record(SM64Metrics.Function.MARIO_DELETE, start);
+        }
+    }
+    
+    public long sm64_surface_object_create(SM64SurfaceObject surfaceObject) {
+        var start = SM64Metrics.ENABLED ? System.nanoTime() : 0;
+        long objectId;
+        try {
+            objectId = Integer.toUnsignedLong((int) surfaceObjectCreate().invokeExact(surfaceObject.address()));
+        } catch (Throwable e) {
+            throw new RuntimeException("Failed to execute sm64_surface_object_create", e);
+        }
+        if (SM64Metrics.ENABLED) {
+            SM64Metrics.surfaceObject(SM64Metrics.Function.SURFACE_OBJECT_CREATE, start, objectId);
+        }
+        return objectId;
+    }
+    
+    public void sm64_surface_object_move(long objectId, SM64ObjectTransform transform) {
+        var start = SM64Metrics.ENABLED ? System.nanoTime() : 0;
+        try {
+            surfaceObjectMove().invokeExact((int) (objectId & 0x00000000_FFFFFFFFL), transform.address());
+        } catch (Throwable e) {
+            throw new RuntimeException("Failed to execute sm64_surface_object_move", e);
+        }
+        if (SM64Metrics.ENABLED) {
+            SM64Metrics.surfaceObject(SM64Metrics.Function.SURFACE_OBJECT_MOVE, start, objectId);
+        }
+    }
+    
+    public void sm64_surface_object_delete(long objectId) {
+        var start = SM64Metrics.ENABLED ? System.nanoTime() : 0;
+        try {
+            surfaceObjectDelete().invokeExact((int) (objectId & 0x00000000_FFFFFFFFL));
+        } catch (Throwable e) {
+            throw new RuntimeException("Failed to execute sm64_surface_object_delete", e);
+        }
+        if (SM64Metrics.ENABLED) {
+            SM64Metrics.surfaceObject(SM64Metrics.Function.SURFACE_OBJECT_DELETE, start, objectId);
+        }
+    }
+    
+    private MethodHandle globalInit() {
+        var handle = globalInit;
+        if (handle == null) {
+            handle = globalInit = binder.downcall("sm64_global_init", null, Utils.ADDRESS, Utils.ADDRESS, Utils.ADDRESS);
+        }
+        return handle;
+    }
+    
+    private MethodHandle globalTerminate() {
+        var handle = globalTerminate;
+        if (handle == null) {
+            handle = globalTerminate = binder.downcall("sm64_global_terminate", null, new MemoryLayout[0]);
+        }
+        return handle;
+    }
+    
+    private MethodHandle staticSurfacesLoad() {
+        var handle = staticSurfacesLoad;
+        if (handle == null) {
+            handle = staticSurfacesLoad = binder.downcall("sm64_static_surfaces_load", null, Utils.ADDRESS, Utils.U32);
+        }
+        return handle;
+    }
+    
+    private MethodHandle marioCreate() {
+        var handle = marioCreate;
+        if (handle == null) {
+            handle = marioCreate = binder.downcall("sm64_mario_create", Utils.S32, Utils.S16, Utils.S16, Utils.S16);
+        }
+        return handle;
+    }
+    
+    MethodHandle marioTick() {
+        var handle = marioTick;
+        if (handle == null) {
+            handle = marioTick = binder.downcall("sm64_mario_tick", null, Utils.S32, Utils.ADDRESS, Utils.ADDRESS, Utils.ADDRESS);
+        }
+        return handle;
+    }
+    
+    private MethodHandle marioDelete() {
+        var handle = marioDelete;
+        if (handle == null) {
+            handle = marioDelete = binder.downcall("sm64_mario_delete", null, Utils.S32);
+        }
+        return handle;
+    }
+    
+    private MethodHandle surfaceObjectCreate() {
+        var handle = surfaceObjectCreate;
+        if (handle == null) {
+            handle = surfaceObjectCreate = binder.downcall("sm64_surface_object_create", Utils.U32, Utils.ADDRESS);
+        }
+        return handle;
+    }
+    
+    private MethodHandle surfaceObjectMove() {
+        var handle = surfaceObjectMove;
+        if (handle == null) {
+            handle = surfaceObjectMove = binder.downcall("sm64_surface_object_move", null, Utils.U32, Utils.ADDRESS);
+        }
+        return handle;
+    }
+    
+    private MethodHandle surfaceObjectDelete() {
+        var handle = surfaceObjectDelete;
+        if (handle == null) {
+            handle = surfaceObjectDelete = binder.downcall("sm64_surface_object_delete", null, Utils.U32);
+        }
+        return handle;
+    }
+    
+    /**
+     * Gets the address of a symbol in the natives of this world.
+     *
+     * @param name The symbol name
+     * @return The address of the symbol
+     */
+    MemoryAddress symbol(String name) {
+        return binder.symbol(name);
+    }
+    
+    /**
+     * Terminates this world if required and unloads its copy of the natives. Does nothing for the
+     * {@link #global() global} world, it lives as long as the JVM.
+     */
+    @Override
+    public void close() {
+        if (shared) {
+            return;
+        }
+        
+        if (initialized) {
+            sm64_global_terminate();
+        }
+        binder.close();
+    }
+}
@@ -0,0 +1,486 @@
+package com.github.libsm64;
+
+import com.github.libsm64.internal.Utils;
+
+import java.lang.foreign.MemoryLayout;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.MemorySession;
+import java.lang.foreign.ValueLayout;
+import java.util.Objects;
+import java.util.function.IntConsumer;
+
+/**
+ * A bounding volume hierarchy over a set of static surfaces for collision queries on the Java side, without calling
+ * into libsm64. Build it from the same buffer that is passed to
+ * {@link LibSM64#sm64_static_surfaces_load(SM64Surface.Buffer) sm64_static_surfaces_load}.
+ * <p>
+ * The tree is stored in native memory and never changes after it was built, any amount of threads can query it at
+ * the same time. The nodes are stored depth first with a link to the node after their subtree, so queries walk the tree
+ * without a stack and don't allocate. Queries report surfaces by their index in the original buffer.
+ */
+public final class SurfaceBvh implements AutoCloseable {
+    /**
+     * The result of a raycast.
+     *
+     * @param surface The index of the surface that was hit
+     * @param distance The distance along the ray, in multiples of the direction vector
+     */
+    public record Hit(int surface, float distance) {}
+    
+    /**
+     * Surfaces with a normal Y component above this are floors, matches SM64.
+     */
+    private static final float FLOOR_NORMAL_Y = 0.01F;
+    
+    private static final int SURFACE_SHORTS = (int) (SM64Surface.BYTES / Short.BYTES);
+    private static final int VERTICES = 3;
+    private static final int LEAF_SIZE = 4;
+    
+    /*
+    struct Node
+    {
+        float min[3];
+        float max[3];
+        int32_t first; // first triangle of leaves
+        int32_t count; // triangle count of leaves, 0 for inner nodes whose left child is the next node
+        int32_t skip; // the node after this subtree
+    };
+     */
+    private static final MemoryLayout NODE_LAYOUT = Utils.struct(
+        Utils.sequence(Utils.F32, "min", 3),
+        Utils.sequence(Utils.F32, "max", 3),
+        Utils.s32("first"),
+        Utils.s32("count"),
+        Utils.s32("skip")
+    );
+    private static final long NODE_BYTES = NODE_LAYOUT.byteSize();
+    private static final long NODE_MIN = Utils.offset(NODE_LAYOUT, "min");
+    private static final long NODE_MAX = Utils.offset(NODE_LAYOUT, "max");
+    private static final long NODE_FIRST = Utils.offset(NODE_LAYOUT, "first");
+    private static final long NODE_COUNT = Utils.offset(NODE_LAYOUT, "count");
+    private static final long NODE_SKIP = Utils.offset(NODE_LAYOUT, "skip");
+    
+    /*
+    struct Triangle
+    {
+        float vertices[3][3];
+        float normalY;
+        int32_t surface;
+    };
+     */
+    private static final MemoryLayout TRIANGLE_LAYOUT = Utils.struct(
+        Utils.sequence(Utils.F32, "vertices", VERTICES, 3),
+        Utils.f32("normalY"),
+        Utils.s32("surface")
+    );
+    private static final long TRIANGLE_BYTES = TRIANGLE_LAYOUT.byteSize();
+    private static final long TRIANGLE_VERTICES = Utils.offset(TRIANGLE_LAYOUT, "vertices");
+    private static final long TRIANGLE_NORMAL_Y = Utils.offset(TRIANGLE_LAYOUT, "normalY");
+    private static final long TRIANGLE_SURFACE = Utils.offset(TRIANGLE_LAYOUT, "surface");
+    
+    /**
+     * Returned by {@link #cast cast} when nothing was hit.
+     */
+    private static final long MISS = -1;
+    
+    /**
+     * Builds a tree from a set of surfaces.
+     *
+     * @param surfaces The surfaces
+     * @return The new tree
+     */
+    public static SurfaceBvh build(SM64Surface.Buffer surfaces) {
+        Objects.requireNonNull(surfaces, "surfaces can't be null");
+        
+        var count = Math.toIntExact(surfaces.size());
+        var data = new short[Math.multiplyExact(count, SURFACE_SHORTS)];
+        MemorySegment.copy(surfaces.segment(), ValueLayout.JAVA_SHORT, 0, data, 0, data.length);
+        
+        var builder = new Builder(data, count);
+        builder.build();
+        return new SurfaceBvh(builder);
+    }
+    
+    private final MemorySession session = MemorySession.openShared();
+    private final MemorySegment nodes;
+    private final MemorySegment triangles;
+    private final int nodeCount;
+    
+    private SurfaceBvh(Builder builder) {
+        nodeCount = builder.nodeCount;
+        nodes = session.allocate(Math.max(nodeCount, 1) * NODE_BYTES, 64);
+        triangles = session.allocate(Math.max(builder.order.length, 1) * TRIANGLE_BYTES, 64);
+        
+        for (int i = 0; i < nodeCount; i++) {
+            var offset = i * NODE_BYTES;
+            for (int axis = 0; axis < 3; axis++) {
+                nodes.set(ValueLayout.JAVA_FLOAT, offset + NODE_MIN + axis * Float.BYTES, builder.bounds[i * 6 + axis]);
+                nodes.set(ValueLayout.JAVA_FLOAT, offset + NODE_MAX + axis * Float.BYTES, builder.bounds[i * 6 + 3 + axis]);
+            }
+            nodes.set(ValueLayout.JAVA_INT, offset + NODE_FIRST, builder.first[i]);
+            nodes.set(ValueLayout.JAVA_INT, offset + NODE_COUNT, builder.count[i]);
+            nodes.set(ValueLayout.JAVA_INT, offset + NODE_SKIP, builder.skip[i]);
+        }
+        
+        var data = builder.data;
+        for (int i = 0; i < builder.order.length; i++) {
+            var surface = builder.order[i];
+            var offset = i * TRIANGLE_BYTES;
+            var base = surface * SURFACE_SHORTS + VERTICES;
+            for (int component = 0; component < 9; component++) {
+                triangles.set(ValueLayout.JAVA_FLOAT, offset + TRIANGLE_VERTICES + component * Float.BYTES, data[base + component]);
+            }
+            triangles.set(ValueLayout.JAVA_FLOAT, offset + TRIANGLE_NORMAL_Y, normalY(data, base));
+            triangles.set(ValueLayout.JAVA_INT, offset + TRIANGLE_SURFACE, surface);
+        }
+    }
+    
+    /**
+     * Casts a ray and finds the closest surface it hits. Both sides of a surface are hit.
+     *
+     * @param originX The X component of the origin
+     * @param originY The Y component of the origin
+     * @param originZ The Z component of the origin
+     * @param directionX The X component of the direction
+     * @param directionY The Y component of the direction
+     * @param directionZ The Z component of the direction
+     * @param maxDistance The length of the ray, in multiples of the direction vector
+     * @return The closest hit or null if nothing was hit
+     */
+    public Hit raycast(float originX, float originY, float originZ, float directionX, float directionY, float directionZ, float maxDistance) {
+        var hit = cast(originX, originY, originZ, directionX, directionY, directionZ, maxDistance, false);
+        return hit == MISS ? null : new Hit(triangles.get(ValueLayout.JAVA_INT, hitTriangle(hit) * TRIANGLE_BYTES + TRIANGLE_SURFACE), hitDistance(hit));
+    }
+    
+    /**
+     * Finds the height of the highest floor at or below a point.
+     *
+     * @param x The X position
+     * @param y The Y position
+     * @param z The Z position
+     * @return The height of the floor or {@link Float#NaN NaN} if there is no floor below the point
+     */
+    public float floorHeight(float x, float y, float z) {
+        var hit = cast(x, y, z, 0, -1, 0, Float.POSITIVE_INFINITY, true);
+        return hit == MISS ? Float.NaN : y - hitDistance(hit);
+    }
+    
+    /**
+     * Finds every surface whose bounding box overlaps a box.
+     *
+     * @param minX The minimum X of the box
+     * @param minY The minimum Y of the box
+     * @param minZ The minimum Z of the box
+     * @param maxX The maximum X of the box
+     * @param maxY The maximum Y of the box
+     * @param maxZ The maximum Z of the box
+     * @param consumer Receives the index of every overlapping surface
+     * @return The amount of overlapping surfaces
+     */
+    public int overlaps(float minX, float minY, float minZ, float maxX, float maxY, float maxZ, IntConsumer consumer) {
+        Objects.requireNonNull(consumer, "consumer can't be null");
+        
+        int found = 0;
+        int index = 0;
+        while (index < nodeCount) {
+            var node = index * NODE_BYTES;
+            if (!boxOverlaps(nodes, node, minX, minY, minZ, maxX, maxY, maxZ)) {
+                index = nodes.get(ValueLayout.JAVA_INT, node + NODE_SKIP);
+                continue;
+            }
+            
+            var count = nodes.get(ValueLayout.JAVA_INT, node + NODE_COUNT);
+            if (count == 0) {
+                index++;
+                continue;
+            }
+            
+            var first = nodes.get(ValueLayout.JAVA_INT, node + NODE_FIRST);
+            for (int i = first; i < first + count; i++) {
+                var triangle = i * TRIANGLE_BYTES + TRIANGLE_VERTICES;
+                float triangleMinX = Float.POSITIVE_INFINITY, triangleMinY = Float.POSITIVE_INFINITY, triangleMinZ = Float.POSITIVE_INFINITY;
+                float triangleMaxX = Float.NEGATIVE_INFINITY, triangleMaxY = Float.NEGATIVE_INFINITY, triangleMaxZ = Float.NEGATIVE_INFINITY;
+                for (int corner = 0; corner < 3; corner++) {
+                    var x = triangles.get(ValueLayout.JAVA_FLOAT, triangle + corner * 12L);
+                    var y = triangles.get(ValueLayout.JAVA_FLOAT, triangle + corner * 12L + 4);
+                    var z = triangles.get(ValueLayout.JAVA_FLOAT, triangle + corner * 12L + 8);
+                    triangleMinX = Math.min(triangleMinX, x);
+                    triangleMinY = Math.min(triangleMinY, y);
+                    triangleMinZ = Math.min(triangleMinZ, z);
+                    triangleMaxX = Math.max(triangleMaxX, x);
+                    triangleMaxY = Math.max(triangleMaxY, y);
+                    triangleMaxZ = Math.max(triangleMaxZ, z);
+                }
+                if (
+                    triangleMinX <= maxX && triangleMaxX >= minX &&
+                    triangleMinY <= maxY && triangleMaxY >= minY &&
+                    triangleMinZ <= maxZ && triangleMaxZ >= minZ
+                ) {
+                    consumer.accept(triangles.get(ValueLayout.JAVA_INT, i * TRIANGLE_BYTES + TRIANGLE_SURFACE));
+                    found++;
+                }
+            }
+            index = nodes.get(ValueLayout.JAVA_INT, node + NODE_SKIP);
+        }
+        return found;
+    }
+    
+    /**
+     * Frees the tree, it must not be queried anymore.
+     */
+    @Override
+    public void close() {
+        session.close();
+    }
+    
+    /**
+     * Finds the closest triangle along a ray.
+     *
+     * @return The index of the triangle in the upper half and the bits of the distance in the lower half, or
+     * {@link #MISS MISS}
+     */
+    private long cast(float originX, float originY, float originZ, float directionX, float directionY, float directionZ, float maxDistance, boolean floorsOnly) {
+        var inverseX = 1 / directionX;
+        var inverseY = 1 / directionY;
+        var inverseZ = 1 / directionZ;
+        
+        int closest = -1;
+        var closestDistance = maxDistance;
+        int index = 0;
+        while (index < nodeCount) {
+            var node = index * NODE_BYTES;
+            if (!rayOverlaps(nodes, node, originX, originY, originZ, inverseX, inverseY, inverseZ, closestDistance)) {
+                index = nodes.get(ValueLayout.JAVA_INT, node + NODE_SKIP);
+                continue;
+            }
+            
+            var count = nodes.get(ValueLayout.JAVA_INT, node + NODE_COUNT);
+            if (count == 0) {
+                index++;
+                continue;
+            }
+            
+            var first = nodes.get(ValueLayout.JAVA_INT, node + NODE_FIRST);
+            for (int i = first; i < first + count; i++) {
+                var triangle = i * TRIANGLE_BYTES;
+                if (floorsOnly && triangles.get(ValueLayout.JAVA_FLOAT, triangle + TRIANGLE_NORMAL_Y) <= FLOOR_NORMAL_Y) {
+                    continue;
+                }
+                var distance = intersect(triangles, triangle + TRIANGLE_VERTICES, originX, originY, originZ, directionX, directionY, directionZ);
+                if (distance >= 0 && distance <= closestDistance) {
+                    closest = i;
+                    closestDistance = distance;
+                }
+            }
+            index = nodes.get(ValueLayout.JAVA_INT, node + NODE_SKIP);
+        }
+        
+        return closest < 0 ? MISS : ((long) closest << 32) | Integer.toUnsignedLong(Float.floatToRawIntBits(closestDistance));
+    }
+    
+    private static int hitTriangle(long hit) {
+        return (int) (hit >>> 32);
+    }
+    
+    private static float hitDistance(long hit) {
+        return Float.intBitsToFloat((int) hit);
+    }
+    
+    /**
+     * Möller-Trumbore ray triangle intersection, returns the distance along the ray or -1.
+     */
+    private static float intersect(MemorySegment triangles, long triangle, float originX, float originY, float originZ, float directionX, float directionY, float directionZ) {
+        var v0x = triangles.get(ValueLayout.JAVA_FLOAT, triangle);
+        var v0y = triangles.get(ValueLayout.JAVA_FLOAT, triangle + 4);
+        var v0z = triangles.get(ValueLayout.JAVA_FLOAT, triangle + 8);
+        var e1x = triangles.get(ValueLayout.JAVA_FLOAT, triangle + 12) - v0x;
+        var e1y = triangles.get(ValueLayout.JAVA_FLOAT, triangle + 16) - v0y;
+        var e1z = triangles.get(ValueLayout.JAVA_FLOAT, triangle + 20) - v0z;
+        var e2x = triangles.get(ValueLayout.JAVA_FLOAT, triangle + 24) - v0x;
+        var e2y = triangles.get(ValueLayout.JAVA_FLOAT, triangle + 28) - v0y;
+        var e2z = triangles.get(ValueLayout.JAVA_FLOAT, triangle + 32) - v0z;
+        
+        var px = directionY * e2z - directionZ * e2y;
+        var py = directionZ * e2x - directionX * e2z;
+        var pz = directionX * e2y - directionY * e2x;
+        var determinant = e1x * px + e1y * py + e1z * pz;
+        if (Math.abs(determinant) < 1e-8F) {
+            return -1;
+        }
+        var inverse = 1 / determinant;
+        
+        var tx = originX - v0x;
+        var ty = originY - v0y;
+        var tz = originZ - v0z;
+        var u = (tx * px + ty * py + tz * pz) * inverse;
+        if (u < 0 || u > 1) {
+            return -1;
+        }
+        
+        var qx = ty * e1z - tz * e1y;
+        var qy = tz * e1x - tx * e1z;
+        var qz = tx * e1y - ty * e1x;
+        var v = (directionX * qx + directionY * qy + directionZ * qz) * inverse;
+        if (v < 0 || u + v > 1) {
+            return -1;
+        }
+        
+        return (e2x * qx + e2y * qy + e2z * qz) * inverse;
+    }
+    
+    private static boolean rayOverlaps(MemorySegment nodes, long node, float originX, float originY, float originZ, float inverseX, float inverseY, float inverseZ, float maxDistance) {
+        float near = 0;
+        float far = maxDistance;
+        
+        var t0 = (nodes.get(ValueLayout.JAVA_FLOAT, node + NODE_MIN) - originX) * inverseX;
+        var t1 = (nodes.get(ValueLayout.JAVA_FLOAT, node + NODE_MAX) - originX) * inverseX;
+        near = Math.max(near, Math.min(t0, t1));
+        far = Math.min(far, Math.max(t0, t1));
+        
+        t0 = (nodes.get(ValueLayout.JAVA_FLOAT, node + NODE_MIN + 4) - originY) * inverseY;
+        t1 = (nodes.get(ValueLayout.JAVA_FLOAT, node + NODE_MAX + 4) - originY) * inverseY;
+        near = Math.max(near, Math.min(t0, t1));
+        far = Math.min(far, Math.max(t0, t1));
+        
+        t0 = (nodes.get(ValueLayout.JAVA_FLOAT, node + NODE_MIN + 8) - originZ) * inverseZ;
+        t1 = (nodes.get(ValueLayout.JAVA_FLOAT, node + NODE_MAX + 8) - originZ) * inverseZ;
+        near = Math.max(near, Math.min(t0, t1));
+        far = Math.min(far, Math.max(t0, t1));
+        
+        // NaN shows up for axis aligned rays that start exactly on a slab, treat those as a hit
+        return !(near > far);
+    }
+    
+    private static boolean boxOverlaps(MemorySegment nodes, long node, float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        return nodes.get(ValueLayout.JAVA_FLOAT, node + NODE_MIN) <= maxX && nodes.get(ValueLayout.JAVA_FLOAT, node + NODE_MAX) >= minX &&
+            nodes.get(ValueLayout.JAVA_FLOAT, node + NODE_MIN + 4) <= maxY && nodes.get(ValueLayout.JAVA_FLOAT, node + NODE_MAX + 4) >= minY &&
+            nodes.get(ValueLayout.JAVA_FLOAT, node + NODE_MIN + 8) <= maxZ && nodes.get(ValueLayout.JAVA_FLOAT, node + NODE_MAX + 8) >= minZ;
+    }
+    
+    private static float normalY(short[] data, int base) {
+        float e1x = data[base + 3] - data[base], e1y = data[base + 4] - data[base + 1], e1z = data[base + 5] - data[base + 2];
+        float e2x = data[base + 6] - data[base + 3], e2y = data[base + 7] - data[base + 4], e2z = data[base + 8] - data[base + 5];
+        float nx = e1y * e2z - e1z * e2y;
+        float ny = e1z * e2x - e1x * e2z;
+        float nz = e1x * e2y - e1y * e2x;
+        var length = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+        return length == 0 ? 0 : ny / length;
+    }
+    
+    /**
+     * Builds the tree on the heap with median splits along the longest axis, the nodes are numbered depth first.
+     */
+    private static final class Builder {
+        private final short[] data;
+        private final int[] order;
+        private final float[] centroids;
+        private float[] bounds;
+        private int[] first;
+        private int[] count;
+        private int[] skip;
+        private int nodeCount;
+        
+        Builder(short[] data, int surfaces) {
+            this.data = data;
+            order = new int[surfaces];
+            centroids = new float[surfaces * 3];
+            for (int i = 0; i < surfaces; i++) {
+                order[i] = i;
+                var base = i * SURFACE_SHORTS + VERTICES;
+                for (int axis = 0; axis < 3; axis++) {
+                    centroids[i * 3 + axis] = (data[base + axis] + data[base + 3 + axis] + data[base + 6 + axis]) / 3F;
+                }
+            }
+            
+            var maxNodes = Math.max(surfaces * 2, 1);
+            bounds = new float[maxNodes * 6];
+            first = new int[maxNodes];
+            count = new int[maxNodes];
+            skip = new int[maxNodes];
+        }
+        
+        void build() {
+            if (order.length == 0) {
+                return;
+            }
+            build(0, order.length);
+        }
+        
+        private void build(int start, int end) {
+            var node = nodeCount++;
+            float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY, minZ = Float.POSITIVE_INFINITY;
+            float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY, maxZ = Float.NEGATIVE_INFINITY;
+            for (int i = start; i < end; i++) {
+                var base = order[i] * SURFACE_SHORTS + VERTICES;
+                for (int corner = 0; corner < 3; corner++) {
+                    var offset = base + corner * 3;
+                    minX = Math.min(minX, data[offset]);
+                    minY = Math.min(minY, data[offset + 1]);
+                    minZ = Math.min(minZ, data[offset + 2]);
+                    maxX = Math.max(maxX, data[offset]);
+                    maxY = Math.max(maxY, data[offset + 1]);
+                    maxZ = Math.max(maxZ, data[offset + 2]);
+                }
+            }
+            bounds[node * 6] = minX;
+            bounds[node * 6 + 1] = minY;
+            bounds[node * 6 + 2] = minZ;
+            bounds[node * 6 + 3] = maxX;
+            bounds[node * 6 + 4] = maxY;
+            bounds[node * 6 + 5] = maxZ;
+            
+            if (end - start <= LEAF_SIZE) {
+                first[node] = start;
+                count[node] = end - start;
+                skip[node] = nodeCount;
+                return;
+            }
+            
+            var sizeX = maxX - minX;
+            var sizeY = maxY - minY;
+            var sizeZ = maxZ - minZ;
+            var axis = sizeX >= sizeY && sizeX >= sizeZ ? 0 : sizeY >= sizeZ ? 1 : 2;
+            var middle = (start + end) >>> 1;
+            select(start, end - 1, middle, axis);
+            
+            count[node] = 0;
+            // The median split keeps the recursion near log2(n) deep
+            build(start, middle);
+            build(middle, end);
+            skip[node] = nodeCount;
+        }
+        
+        /**
+         * Partially sorts the range so the element at index k is the one that would be there if it was sorted by the
+         * centroid on the provided axis.
+         */
+        private void select(int low, int high, int k, int axis) {
+            while (high > low) {
+                var pivot = centroids[order[(low + high) >>> 1] * 3 + axis];
+                int i = low, j = high;
+                while (i <= j) {
+                    while (centroids[order[i] * 3 + axis] < pivot) {
+                        i++;
+                    }
+                    while (centroids[order[j] * 3 + axis] > pivot) {
+                        j--;
+                    }
+                    if (i <= j) {
+                        var swap = order[i];
+                        order[i] = order[j];
+                        order[j] = swap;
+                        i++;
+                        j--;
+                    }
+                }
+                if (k <= j) {
+                    high = j;
+                } else if (k >= i) {
+                    low = i;
+                } else {
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,340 @@
+package com.github.libsm64;
+
+import java.lang.foreign.MemorySession;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.LongConsumer;
+import java.util.function.ObjLongConsumer;
+import java.util.function.ToLongFunction;
+import java.util.stream.IntStream;
+
+/**
+ * Owns a set of surface objects and moves them along their animations. Every {@link #update(double) update}
+ * evaluates all animations, in parallel when there are enough of them, and only calls
+ * {@link LibSM64#sm64_surface_object_move(long, SM64ObjectTransform) sm64_surface_object_move} for objects whose
+ * transform actually changed. All moves are written through a single preallocated transform.
+ * <p>
+ * This is not thread safe, use it from the thread that owns libsm64.
+ */
+public final class SurfaceObjectManager implements AutoCloseable {
+    /**
+     * The amount of floats in a transform, the position followed by the euler rotation.
+     */
+    public static final int TRANSFORM_FLOATS = 6;
+    
+    /**
+     * Below this many objects the animations are evaluated on the calling thread.
+     */
+    private static final int PARALLEL_THRESHOLD = 64;
+    
+    /**
+     * Calculates the transform of a surface object at a point in time. Animations are evaluated concurrently and must
+     * not have side effects.
+     */
+    @FunctionalInterface
+    public interface Animation {
+        /**
+         * Evaluates the animation.
+         *
+         * @param time The time in seconds
+         * @param destination Receives the position and euler rotation in degrees
+         * @param offset The offset into destination
+         */
+        void evaluate(double time, float[] destination, int offset);
+        
+        /**
+         * An animation that never moves.
+         *
+         * @param transform The position and euler rotation
+         * @return The animation
+         */
+        static Animation fixed(float[] transform) {
+            var copy = checkTransform(transform, "transform").clone();
+            return (time, destination, offset) -> System.arraycopy(copy, 0, destination, offset, TRANSFORM_FLOATS);
+        }
+        
+        /**
+         * Moves back and forth between two transforms.
+         *
+         * @param from The first transform
+         * @param to The second transform
+         * @param period The time a full round trip takes in seconds
+         * @return The animation
+         */
+        static Animation linear(float[] from, float[] to, double period) {
+            var start = checkTransform(from, "from").clone();
+            var end = checkTransform(to, "to").clone();
+            checkPeriod(period);
+            return (time, destination, offset) -> {
+                var phase = fraction(time, period) * 2;
+                var t = (float) (phase <= 1 ? phase : 2 - phase);
+                for (int i = 0; i < TRANSFORM_FLOATS; i++) {
+                    destination[offset + i] = start[i] + (end[i] - start[i]) * t;
+                }
+            };
+        }
+        
+        /**
+         * Moves along a closed Catmull-Rom spline through a set of transforms, spending the same time between every
+         * pair of points.
+         *
+         * @param points The transforms to pass through, at least two
+         * @param period The time a full loop takes in seconds
+         * @return The animation
+         */
+        static Animation spline(float[][] points, double period) {
+            Objects.requireNonNull(points, "points can't be null");
+            if (points.length < 2) {
+                throw new IllegalArgumentException("points must contain at least two transforms");
+            }
+            checkPeriod(period);
+            var copy = new float[points.length][];
+            for (int i = 0; i < points.length; i++) {
+                copy[i] = checkTransform(points[i], "points").clone();
+            }
+            return (time, destination, offset) -> {
+                var position = fraction(time, period) * copy.length;
+                var segment = Math.min((int) position, copy.length - 1);
+                var t = (float) (position - segment);
+                var p0 = copy[Math.floorMod(segment - 1, copy.length)];
+                var p1 = copy[segment];
+                var p2 = copy[(segment + 1) % copy.length];
+                var p3 = copy[(segment + 2) % copy.length];
+                var t2 = t * t;
+                var t3 = t2 * t;
+                for (int i = 0; i < TRANSFORM_FLOATS; i++) {
+                    destination[offset + i] = 0.5F * (
+                        2 * p1[i] +
+                        (p2[i] - p0[i]) * t +
+                        (2 * p0[i] - 5 * p1[i] + 4 * p2[i] - p3[i]) * t2 +
+                        (3 * p1[i] - p0[i] - 3 * p2[i] + p3[i]) * t3
+                    );
+                }
+            };
+        }
+        
+        /**
+         * Spins in place at a constant rate.
+         *
+         * @param transform The position and starting rotation
+         * @param degreesPerSecondX The rotation speed around X
+         * @param degreesPerSecondY The rotation speed around Y
+         * @param degreesPerSecondZ The rotation speed around Z
+         * @return The animation
+         */
+        static Animation rotation(float[] transform, float degreesPerSecondX, float degreesPerSecondY, float degreesPerSecondZ) {
+            var base = checkTransform(transform, "transform").clone();
+            return (time, destination, offset) -> {
+                System.arraycopy(base, 0, destination, offset, 3);
+                destination[offset + 3] = (float) ((base[3] + degreesPerSecondX * time) % 360);
+                destination[offset + 4] = (float) ((base[4] + degreesPerSecondY * time) % 360);
+                destination[offset + 5] = (float) ((base[5] + degreesPerSecondZ * time) % 360);
+            };
+        }
+        
+        private static float[] checkTransform(float[] transform, String name) {
+            Objects.requireNonNull(transform, name + " can't be null");
+            if (transform.length != TRANSFORM_FLOATS) {
+                throw new IllegalArgumentException(name + " must contain " + TRANSFORM_FLOATS + " floats");
+            }
+            return transform;
+        }
+        
+        private static void checkPeriod(double period) {
+            if (!(period > 0)) {
+                throw new IllegalArgumentException("period must be greater than 0");
+            }
+        }
+        
+        private static double fraction(double time, double period) {
+            var fraction = (time % period) / period;
+            return fraction < 0 ? fraction + 1 : fraction;
+        }
+    }
+    
+    private final ToLongFunction<SM64SurfaceObject> create;
+    private final ObjLongConsumer<SM64ObjectTransform> move;
+    private final LongConsumer delete;
+    
+    private final MemorySession session = MemorySession.openShared();
+    private final SM64ObjectTransform transform = new SM64ObjectTransform(session);
+    private final Map<Long, Integer> slots = new HashMap<>();
+    
+    private long[] ids = new long[16];
+    private Animation[] animations = new Animation[16];
+    private float[] current = new float[16 * TRANSFORM_FLOATS];
+    private float[] next = new float[16 * TRANSFORM_FLOATS];
+    private int size;
+    
+    /**
+     * Creates a manager for the shared libsm64 instance.
+     */
+    public SurfaceObjectManager() {
+        this(
+            LibSM64::sm64_surface_object_create,
+            (transform, objectId) -> LibSM64.sm64_surface_object_move(objectId, transform),
+            LibSM64::sm64_surface_object_delete
+        );
+    }
+    
+    /**
+     * Creates a manager for a world.
+     *
+     * @param world The world the objects are created in
+     */
+    public SurfaceObjectManager(SM64World world) {
+        this(
+            Objects.requireNonNull(world, "world can't be null")::sm64_surface_object_create,
+            (transform, objectId) -> world.sm64_surface_object_move(objectId, transform),
+            world::sm64_surface_object_delete
+        );
+    }
+    
+    private SurfaceObjectManager(ToLongFunction<SM64SurfaceObject> create, ObjLongConsumer<SM64ObjectTransform> move, LongConsumer delete) {
+        this.create = create;
+        this.move = move;
+        this.delete = delete;
+    }
+    
+    /**
+     * Creates a surface object.
+     *
+     * @param surfaceObject The object, its transform is used until the first update
+     * @param animation The animation of the object or null if it does not move
+     * @return The id of the object
+     */
+    public long add(SM64SurfaceObject surfaceObject, Animation animation) {
+        Objects.requireNonNull(surfaceObject, "surfaceObject can't be null");
+        
+        var objectId = create.applyAsLong(surfaceObject);
+        if (size == ids.length) {
+            var capacity = size * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            animations = Arrays.copyOf(animations, capacity);
+            current = Arrays.copyOf(current, capacity * TRANSFORM_FLOATS);
+            next = Arrays.copyOf(next, capacity * TRANSFORM_FLOATS);
+        }
+        
+        var initial = surfaceObject.transform();
+        var offset = size * TRANSFORM_FLOATS;
+        current[offset] = initial.positionX();
+        current[offset + 1] = initial.positionY();
+        current[offset + 2] = initial.positionZ();
+        current[offset + 3] = initial.eulerRotationX();
+        current[offset + 4] = initial.eulerRotationY();
+        current[offset + 5] = initial.eulerRotationZ();
+        
+        ids[size] = objectId;
+        animations[size] = animation;
+        slots.put(objectId, size);
+        size++;
+        return objectId;
+    }
+    
+    /**
+     * Replaces the animation of an object.
+     *
+     * @param objectId The id of the object
+     * @param animation The new animation or null to stop it where it is
+     */
+    public void animation(long objectId, Animation animation) {
+        animations[slot(objectId)] = animation;
+    }
+    
+    /**
+     * Deletes an object.
+     *
+     * @param objectId The id of the object
+     */
+    public void remove(long objectId) {
+        var slot = slot(objectId);
+        delete.accept(objectId);
+        slots.remove(objectId);
+        
+        var last = --size;
+        if (slot != last) {
+            ids[slot] = ids[last];
+            animations[slot] = animations[last];
+            System.arraycopy(current, last * TRANSFORM_FLOATS, current, slot * TRANSFORM_FLOATS, TRANSFORM_FLOATS);
+            slots.put(ids[slot], slot);
+        }
+        animations[last] = null;
+    }
+    
+    /**
+     * Evaluates every animation and moves the objects that changed.
+     *
+     * @param time The animation time in seconds
+     * @return The amount of objects that were moved
+     */
+    public int update(double time) {
+        var count = size;
+        if (count >= PARALLEL_THRESHOLD) {
+            IntStream.range(0, count).parallel().forEach((slot) -> evaluate(slot, time));
+        } else {
+            for (int slot = 0; slot < count; slot++) {
+                evaluate(slot, time);
+            }
+        }
+        
+        int moved = 0;
+        for (int slot = 0; slot < count; slot++) {
+            var offset = slot * TRANSFORM_FLOATS;
+            if (Arrays.equals(current, offset, offset + TRANSFORM_FLOATS, next, offset, offset + TRANSFORM_FLOATS)) {
+                continue;
+            }
+            System.arraycopy(next, offset, current, offset, TRANSFORM_FLOATS);
+            transform.position(current[offset], current[offset + 1], current[offset + 2])
+                .eulerRotation(current[offset + 3], current[offset + 4], current[offset + 5]);
+            move.accept(transform, ids[slot]);
+            moved++;
+        }
+        return moved;
+    }
+    
+    /**
+     * Gets the amount of objects.
+     *
+     * @return The amount of objects
+     */
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * Deletes every object and frees the transform.
+     */
+    @Override
+    public void close() {
+        try {
+            for (int slot = 0; slot < size; slot++) {
+                delete.accept(ids[slot]);
+            }
+        } finally {
+            size = 0;
+            slots.clear();
+            Arrays.fill(animations, null);
+            session.close();
+        }
+    }
+    
+    private void evaluate(int slot, double time) {
+        var offset = slot * TRANSFORM_FLOATS;
+        var animation = animations[slot];
+        if (animation == null) {
+            System.arraycopy(current, offset, next, offset, TRANSFORM_FLOATS);
+        } else {
+            animation.evaluate(time, next, offset);
+        }
+    }
+    
+    private int slot(long objectId) {
+        var slot = slots.get(objectId);
+        if (slot == null) {
+            throw new IllegalArgumentException("Unknown surface object " + objectId);
+        }
+        return slot;
+    }
+}
@@ -0,0 +1,254 @@
+package com.github.libsm64;
+
+import java.lang.invoke.VarHandle;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs registered tasks at a fixed rate on a dedicated thread, by default at the 30 Hz of SM64.
+ * <p>
+ * Deadlines are advanced by exactly one period every frame so timing errors do not accumulate. When a frame runs late
+ * the following frames run back to back until the scheduler caught up, if it falls behind by more than the catch up
+ * limit the missed frames are skipped instead.
+ * <p>
+ * A scheduler runs a single time, it can't be started again after it was closed.
+ */
+public final class TickScheduler implements AutoCloseable {
+    /**
+     * The length of a single SM64 frame.
+     */
+    public static final long SM64_FRAME_NANOS = TimeUnit.SECONDS.toNanos(1) / 30;
+    
+    /**
+     * Parking is not precise, the last part of every wait is spent spinning instead.
+     */
+    private static final long SPIN_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+    
+    /**
+     * Tick timing statistics.
+     *
+     * @param ticks The amount of frames that were run
+     * @param skippedFrames The amount of frames that were skipped because the scheduler fell too far behind
+     * @param lastNanos The duration of the last frame
+     * @param minNanos The shortest frame
+     * @param maxNanos The longest frame
+     * @param meanNanos The average frame duration
+     */
+    public record Statistics(long ticks, long skippedFrames, long lastNanos, long minNanos, long maxNanos, double meanNanos) {}
+    
+    private final long periodNanos;
+    private final int maxCatchUpFrames;
+    private final List<Runnable> tasks = new CopyOnWriteArrayList<>();
+    private final Thread thread;
+    private volatile boolean running;
+    private volatile boolean closed;
+    
+    /*
+    The statistics are only turned into a record when they are asked for, so frames don't allocate. The scheduler thread
+    makes the version odd while it updates the counters, readers retry until they saw the same even version on both
+    sides of their reads.
+     */
+    private volatile long version;
+    private long ticks;
+    private long skippedFrames;
+    private long lastNanos;
+    private long minNanos;
+    private long maxNanos;
+    private long totalNanos;
+    
+    /**
+     * Creates a scheduler that runs at the SM64 frame rate and catches up at most 5 frames.
+     */
+    public TickScheduler() {
+        this(SM64_FRAME_NANOS, 5);
+    }
+    
+    /**
+     * Creates a new scheduler, it has to be {@link #start() started} before it runs any tasks.
+     *
+     * @param periodNanos The length of a frame
+     * @param maxCatchUpFrames How many late frames are run back to back before frames get skipped
+     */
+    public TickScheduler(long periodNanos, int maxCatchUpFrames) {
+        if (periodNanos <= 0) {
+            throw new IllegalArgumentException("periodNanos must be greater than 0");
+        }
+        if (maxCatchUpFrames < 0) {
+            throw new IllegalArgumentException("maxCatchUpFrames can't be negative");
+        }
+        
+        this.periodNanos = periodNanos;
+        this.maxCatchUpFrames = maxCatchUpFrames;
+        thread = new Thread(this::run, "jSM64 Tick Scheduler");
+        thread.setDaemon(true);
+    }
+    
+    /**
+     * Registers a task that is run once per frame on the scheduler thread. Tasks run in registration order.
+     *
+     * @param task The task
+     * @return The task, for {@link #unregister(Runnable) unregister}
+     */
+    public Runnable register(Runnable task) {
+        tasks.add(Objects.requireNonNull(task, "task can't be null"));
+        return task;
+    }
+    
+    /**
+     * Registers a Mario that is ticked once per frame.
+     *
+     * @param marioId The Mario to tick
+     * @param inputs The inputs of the Mario
+     * @param outState The state the Mario is ticked into
+     * @param outBuffers The geometry the Mario is ticked into
+     * @return The task, for {@link #unregister(Runnable) unregister}
+     */
+    public Runnable registerMario(int marioId, SM64MarioInputs inputs, SM64MarioState outState, SM64MarioGeometryBuffers outBuffers) {
+        Objects.requireNonNull(inputs, "inputs can't be null");
+        Objects.requireNonNull(outState, "outState can't be null");
+        Objects.requireNonNull(outBuffers, "outBuffers can't be null");
+        return register(() -> LibSM64.sm64_mario_tick(marioId, inputs, outState, outBuffers));
+    }
+    
+    /**
+     * Registers a surface object that is moved to the provided transform once per frame.
+     *
+     * @param objectId The surface object to move
+     * @param transform The transform of the object
+     * @return The task, for {@link #unregister(Runnable) unregister}
+     */
+    public Runnable registerSurfaceObject(long objectId, SM64ObjectTransform transform) {
+        Objects.requireNonNull(transform, "transform can't be null");
+        return register(() -> LibSM64.sm64_surface_object_move(objectId, transform));
+    }
+    
+    /**
+     * Removes a task from this scheduler.
+     *
+     * @param task The task to remove
+     * @return True if the task was registered
+     */
+    public boolean unregister(Runnable task) {
+        return tasks.remove(task);
+    }
+    
+    /**
+     * Gets the current timing statistics.
+     *
+     * @return The statistics
+     */
+    public Statistics statistics() {
+        while (true) {
+            var before = version;
+            if ((before & 1) == 0) {
+                var ticks = this.ticks;
+                var statistics = new Statistics(
+                    ticks, skippedFrames, lastNanos, ticks == 0 ? 0 : minNanos, maxNanos,
+                    ticks == 0 ? 0 : (double) totalNanos / ticks
+                );
+                VarHandle.loadLoadFence();
+                if (version == before) {
+                    return statistics;
+                }
+            }
+            Thread.onSpinWait();
+        }
+    }
+    
+    /**
+     * Starts the scheduler thread.
+     *
+     * @throws IllegalStateException If the scheduler was already started or closed
+     */
+    public synchronized void start() {
+        if (closed) {
+            throw new IllegalStateException("TickScheduler was closed");
+        }
+        if (thread.getState() != Thread.State.NEW) {
+            throw new IllegalStateException("TickScheduler was already started");
+        }
+        running = true;
+        thread.start();
+    }
+    
+    /**
+     * Stops the scheduler and waits for the current frame to finish.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        running = false;
+        if (thread.isAlive() && thread != Thread.currentThread()) {
+            LockSupport.unpark(thread);
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+    
+    private void run() {
+        long ticks = 0;
+        long skipped = 0;
+        long min = Long.MAX_VALUE;
+        long max = 0;
+        long total = 0;
+        long version = 0;
+        
+        long deadline = System.nanoTime();
+        while (running) {
+            waitUntil(deadline);
+            if (!running) {
+                break;
+            }
+            
+            long start = System.nanoTime();
+            for (var task : tasks) {
+                try {
+                    task.run();
+                } catch (Throwable e) {
+                    thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+                }
+            }
+            long end = System.nanoTime();
+            
+            long duration = end - start;
+            ticks++;
+            min = Math.min(min, duration);
+            max = Math.max(max, duration);
+            total += duration;
+            
+            deadline += periodNanos;
+            long late = end - deadline;
+            if (late > maxCatchUpFrames * periodNanos) {
+                long missed = late / periodNanos;
+                deadline += missed * periodNanos;
+                skipped += missed;
+            }
+            
+            this.version = ++version;
+            VarHandle.storeStoreFence();
+            this.ticks = ticks;
+            skippedFrames = skipped;
+            lastNanos = duration;
+            minNanos = min;
+            maxNanos = max;
+            totalNanos = total;
+            this.version = ++version;
+        }
+    }
+    
+    private void waitUntil(long deadline) {
+        long remaining;
+        while (running && (remaining = deadline - System.nanoTime()) > SPIN_NANOS) {
+            LockSupport.parkNanos(remaining - SPIN_NANOS);
+        }
+        while (running && deadline - System.nanoTime() > 0) {
+            Thread.onSpinWait();
+        }
+    }
+}
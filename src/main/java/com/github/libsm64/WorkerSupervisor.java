@@ -0,0 +1,380 @@
+package com.github.libsm64;
+
+import com.github.libsm64.internal.Utils;
+
+import java.io.IOException;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.MemorySession;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs libsm64 worlds in child JVMs so a native crash only takes down a single world. Inputs and states are exchanged
+ * with the children through memory mapped files, see {@link WorldWorker WorldWorker} for the layout.
+ * <p>
+ * Workers that crash or stop responding are restarted, their Marios are respawned at their last known position.
+ */
+public final class WorkerSupervisor implements AutoCloseable {
+    /**
+     * A single child process and its shared file.
+     */
+    public static final class Worker {
+        private final WorkerSupervisor supervisor;
+        private final Path file;
+        private final MemorySegment header;
+        private final MemorySegment[] slots;
+        private final SM64MarioInputs[] inputs;
+        private final SM64MarioState[] states;
+        private Process process;
+        private long sequence;
+        private int restarts;
+        
+        private Worker(WorkerSupervisor supervisor, Path file, int capacity) throws IOException {
+            this.supervisor = supervisor;
+            this.file = file;
+            
+            MemorySegment shared;
+            try (var channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                shared = channel.map(FileChannel.MapMode.READ_WRITE, 0, WorldWorker.bytes(capacity), supervisor.session);
+            }
+            
+            header = shared.asSlice(0, WorldWorker.HEADER_BYTES);
+            WorldWorker.MAGIC_HANDLE.set(header, WorldWorker.MAGIC);
+            WorldWorker.CAPACITY.set(header, capacity);
+            
+            slots = new MemorySegment[capacity];
+            inputs = new SM64MarioInputs[capacity];
+            states = new SM64MarioState[capacity];
+            for (int i = 0; i < capacity; i++) {
+                var slot = WorldWorker.slot(shared, i);
+                slots[i] = slot;
+                inputs[i] = new SM64MarioInputs(slot.asSlice(WorldWorker.INPUTS_OFFSET, SM64MarioInputs.BYTES));
+                states[i] = new SM64MarioState(slot.asSlice(WorldWorker.STATE_OFFSET, SM64MarioState.BYTES));
+                WorldWorker.MARIO_ID.set(slot, -1);
+            }
+        }
+        
+        /**
+         * Gets the inputs of a slot, these are sent to the worker on the next tick.
+         *
+         * @param slot The slot
+         * @return The inputs of the slot
+         */
+        public SM64MarioInputs inputs(int slot) {
+            return inputs[slot];
+        }
+        
+        /**
+         * Gets the state of a slot as of the last completed tick.
+         *
+         * @param slot The slot
+         * @return The state of the slot
+         */
+        public SM64MarioState state(int slot) {
+            return states[slot];
+        }
+        
+        /**
+         * Spawns a Mario in a slot on the next tick, replacing the Mario that is already in the slot.
+         *
+         * @param slot The slot
+         * @param x The X coordinate of the spawn point
+         * @param y The Y coordinate of the spawn point
+         * @param z The Z coordinate of the spawn point
+         */
+        public void spawn(int slot, short x, short y, short z) {
+            var segment = slots[slot];
+            WorldWorker.SPAWN_X.set(segment, x);
+            WorldWorker.SPAWN_Y.set(segment, y);
+            WorldWorker.SPAWN_Z.set(segment, z);
+            WorldWorker.COMMAND.set(segment, WorldWorker.COMMAND_SPAWN);
+        }
+        
+        /**
+         * Deletes the Mario in a slot on the next tick.
+         *
+         * @param slot The slot
+         */
+        public void delete(int slot) {
+            WorldWorker.COMMAND.set(slots[slot], WorldWorker.COMMAND_DELETE);
+        }
+        
+        /**
+         * Gets the libsm64 id of the Mario in a slot as of the last completed tick.
+         *
+         * @param slot The slot
+         * @return The id or -1 if the slot is empty or the Mario could not be created
+         */
+        public int marioId(int slot) {
+            return (int) WorldWorker.MARIO_ID.get(slots[slot]);
+        }
+        
+        /**
+         * Gets the amount of slots of this worker.
+         *
+         * @return The amount of slots
+         */
+        public int capacity() {
+            return slots.length;
+        }
+        
+        /**
+         * Gets the amount of times this worker was restarted.
+         *
+         * @return The restart count
+         */
+        public int restarts() {
+            return restarts;
+        }
+        
+        private void start() {
+            WorldWorker.STATUS.set(header, WorldWorker.STATUS_STARTING);
+            WorldWorker.SHUTDOWN.set(header, 0);
+            WorldWorker.REQUEST_SEQUENCE.set(header, 0L);
+            WorldWorker.RESPONSE_SEQUENCE.set(header, 0L);
+            sequence = 0;
+            
+            try {
+                process = new ProcessBuilder(supervisor.command(file))
+                    .inheritIO()
+                    .start();
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to start worker " + file, e);
+            }
+            
+            var started = await(() -> (int) WorldWorker.STATUS.getAcquire(header) != WorldWorker.STATUS_STARTING);
+            var status = (int) WorldWorker.STATUS.getAcquire(header);
+            if (status != WorldWorker.STATUS_READY) {
+                process.destroyForcibly();
+                throw new RuntimeException("Worker " + file + (started ? " failed to start" : " did not start in time"));
+            }
+        }
+        
+        private void restart() {
+            process.destroyForcibly();
+            try {
+                process.waitFor();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while restarting worker " + file, e);
+            }
+            restarts++;
+            
+            // The new process starts with an empty world, bring back every Mario where it was last seen. Commands the
+            // old process never got to are still honored, a pending spawn stays and a pending delete just forgets the id.
+            for (int i = 0; i < slots.length; i++) {
+                var slot = slots[i];
+                var command = (int) WorldWorker.COMMAND.get(slot);
+                var marioId = (int) WorldWorker.MARIO_ID.get(slot);
+                WorldWorker.MARIO_ID.set(slot, -1);
+                if (command == WorldWorker.COMMAND_DELETE) {
+                    WorldWorker.COMMAND.set(slot, WorldWorker.COMMAND_NONE);
+                } else if (command == WorldWorker.COMMAND_NONE && marioId >= 0) {
+                    var state = states[i];
+                    spawn(i, clamp(state.positionX()), clamp(state.positionY()), clamp(state.positionZ()));
+                }
+            }
+            
+            start();
+        }
+        
+        private void request() {
+            WorldWorker.REQUEST_SEQUENCE.setRelease(header, ++sequence);
+        }
+        
+        private boolean response() {
+            return await(() -> (long) WorldWorker.RESPONSE_SEQUENCE.getAcquire(header) == sequence);
+        }
+        
+        private boolean await(Condition condition) {
+            long deadline = System.nanoTime() + supervisor.timeout;
+            int spins = 0;
+            while (!condition.done()) {
+                if ((spins & 0xFF) == 0xFF && (!process.isAlive() || System.nanoTime() - deadline > 0)) {
+                    return condition.done();
+                }
+                spins = Utils.backOff(spins);
+            }
+            return true;
+        }
+        
+        private void stop() {
+            WorldWorker.SHUTDOWN.setRelease(header, 1);
+            try {
+                if (!process.waitFor(supervisor.timeout, TimeUnit.NANOSECONDS)) {
+                    process.destroyForcibly();
+                }
+            } catch (InterruptedException e) {
+                process.destroyForcibly();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+    
+    @FunctionalInterface
+    private interface Condition {
+        boolean done();
+    }
+    
+    private final Path rom;
+    private final Path surfaces;
+    private final long timeout;
+    private final MemorySession session = MemorySession.openShared();
+    private final List<Worker> workers;
+    
+    /**
+     * Starts a set of workers and waits for them to be ready.
+     *
+     * @param rom The ROM
+     * @param surfaces A {@link SM64SurfaceCache SM64SurfaceCache} file to load into every worker or null
+     * @param directory The directory for the shared files, ideally backed by memory like /dev/shm
+     * @param workers The amount of workers
+     * @param capacity The amount of Mario slots of every worker
+     * @param timeout How long to wait for a worker before it is considered hung
+     * @throws IOException If the shared files could not be created
+     */
+    public WorkerSupervisor(Path rom, Path surfaces, Path directory, int workers, int capacity, Duration timeout) throws IOException {
+        this.rom = Objects.requireNonNull(rom, "rom can't be null");
+        this.surfaces = surfaces;
+        Objects.requireNonNull(directory, "directory can't be null");
+        if (workers <= 0) {
+            throw new IllegalArgumentException("workers must be greater than 0");
+        }
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be greater than 0");
+        }
+        this.timeout = Objects.requireNonNull(timeout, "timeout can't be null").toNanos();
+        
+        Files.createDirectories(directory);
+        this.workers = new ArrayList<>(workers);
+        try {
+            for (int i = 0; i < workers; i++) {
+                var worker = new Worker(this, directory.resolve("jsm64-worker-" + i + ".shm"), capacity);
+                this.workers.add(worker);
+                worker.start();
+            }
+        } catch (IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+    
+    /**
+     * Gets a worker.
+     *
+     * @param index The index of the worker
+     * @return The worker
+     */
+    public Worker worker(int index) {
+        return workers.get(index);
+    }
+    
+    /**
+     * Gets the amount of workers.
+     *
+     * @return The amount of workers
+     */
+    public int size() {
+        return workers.size();
+    }
+    
+    /**
+     * Ticks every worker once and waits for the results. Workers that crashed or did not answer in time are restarted,
+     * their states are left as they were before this tick.
+     *
+     * @return The amount of workers that had to be restarted
+     * @throws RuntimeException If a worker could not be restarted, after every other worker was collected
+     */
+    public int tick() {
+        for (var worker : workers) {
+            worker.request();
+        }
+        
+        int restarted = 0;
+        RuntimeException failure = null;
+        for (var worker : workers) {
+            if (!worker.response()) {
+                restarted++;
+                try {
+                    worker.restart();
+                } catch (RuntimeException e) {
+                    if (failure == null) {
+                        failure = e;
+                    } else {
+                        failure.addSuppressed(e);
+                    }
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return restarted;
+    }
+    
+    /**
+     * Stops every worker and removes the shared files.
+     */
+    @Override
+    public void close() {
+        for (var worker : workers) {
+            if (worker.process != null) {
+                worker.stop();
+            }
+        }
+        session.close();
+        for (var worker : workers) {
+            try {
+                Files.deleteIfExists(worker.file);
+            } catch (IOException ignored) {}
+        }
+    }
+    
+    /**
+     * Builds the command line of a worker. The worker uses the same JVM and class or module path as this process.
+     *
+     * @param file The shared file of the worker
+     * @return The command line
+     */
+    private List<String> command(Path file) {
+        var command = new ArrayList<String>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.add("--enable-preview");
+        
+        var module = WorldWorker.class.getModule();
+        if (module.isNamed()) {
+            var modulePath = System.getProperty("jdk.module.path");
+            if (modulePath == null) {
+                throw new IllegalStateException("Module " + module.getName() + " was not loaded from the module path, workers can't be started");
+            }
+            command.add("--enable-native-access=" + module.getName());
+            command.add("--module-path");
+            command.add(modulePath);
+            command.add("--module");
+            command.add(module.getName() + '/' + WorldWorker.class.getName());
+        } else {
+            command.add("--enable-native-access=ALL-UNNAMED");
+            command.add("--class-path");
+            command.add(System.getProperty("java.class.path"));
+            command.add(WorldWorker.class.getName());
+        }
+        
+        command.add(file.toString());
+        command.add(rom.toString());
+        if (surfaces != null) {
+            command.add(surfaces.toString());
+        }
+        return command;
+    }
+    
+    private static short clamp(float value) {
+        return (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, Math.round(value)));
+    }
+}
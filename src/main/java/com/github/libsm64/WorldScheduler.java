@@ -0,0 +1,160 @@
+package com.github.libsm64;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+/**
+ * Ticks a set of {@link SM64World SM64World}s in parallel. Every world is only ever ticked by one thread at a time, but
+ * different worlds run on different threads of the pool.
+ */
+public final class WorldScheduler implements AutoCloseable {
+    /**
+     * A registered world and the code that ticks it.
+     *
+     * @param world The world
+     * @param tick The tick callback
+     */
+    private record Entry(SM64World world, Consumer<SM64World> tick) implements Callable<Void> {
+        @Override
+        public Void call() {
+            tick.accept(world);
+            return null;
+        }
+    }
+    
+    /**
+     * The pool that runs the ticks.
+     */
+    private final ExecutorService executor;
+    
+    /**
+     * Set when the executor was created by this scheduler and should be shut down with it.
+     */
+    private final boolean ownsExecutor;
+    
+    /**
+     * The registered worlds.
+     */
+    private final List<Entry> entries = new CopyOnWriteArrayList<>();
+    
+    /**
+     * Creates a scheduler backed by a new {@link ForkJoinPool ForkJoinPool} with one thread per available processor.
+     */
+    public WorldScheduler() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+    
+    /**
+     * Creates a scheduler backed by a new {@link ForkJoinPool ForkJoinPool}.
+     *
+     * @param parallelism The amount of threads in the pool
+     */
+    public WorldScheduler(int parallelism) {
+        this(new ForkJoinPool(parallelism), true);
+    }
+    
+    /**
+     * Creates a scheduler backed by the provided executor, the executor is not shut down when this scheduler is closed.
+     *
+     * @param executor The executor to tick the worlds on
+     */
+    public WorldScheduler(ExecutorService executor) {
+        this(Objects.requireNonNull(executor, "executor can't be null"), false);
+    }
+    
+    private WorldScheduler(ExecutorService executor, boolean ownsExecutor) {
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+    }
+    
+    /**
+     * Registers a world with this scheduler.
+     *
+     * @param world The world to tick
+     * @param tick The code that ticks the world, called once per {@link #tick() tick}
+     * @throws IllegalArgumentException If the world was already registered
+     */
+    public void add(SM64World world, Consumer<SM64World> tick) {
+        Objects.requireNonNull(world, "world can't be null");
+        Objects.requireNonNull(tick, "tick can't be null");
+        
+        synchronized (entries) {
+            for (var entry : entries) {
+                if (entry.world == world) {
+                    throw new IllegalArgumentException("world was already registered");
+                }
+            }
+            entries.add(new Entry(world, tick));
+        }
+    }
+    
+    /**
+     * Removes a world from this scheduler.
+     *
+     * @param world The world to remove
+     * @return True if the world was registered
+     */
+    public boolean remove(SM64World world) {
+        return entries.removeIf((entry) -> entry.world == world);
+    }
+    
+    /**
+     * Ticks every registered world once and waits for all of them to finish.
+     *
+     * @throws RuntimeException If any of the ticks failed, the remaining failures are suppressed
+     */
+    public void tick() {
+        List<Future<Void>> futures;
+        try {
+            futures = executor.invokeAll(entries);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while ticking worlds", e);
+        }
+        
+        RuntimeException failure = null;
+        for (var future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                // invokeAll already waited for every task
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = new RuntimeException("Failed to tick world", e.getCause());
+                } else {
+                    failure.addSuppressed(e.getCause());
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+    
+    /**
+     * Gets the worlds registered with this scheduler.
+     *
+     * @return A snapshot of the registered worlds
+     */
+    public List<SM64World> worlds() {
+        var worlds = new ArrayList<SM64World>();
+        for (var entry : entries) {
+            worlds.add(entry.world);
+        }
+        return worlds;
+    }
+    
+    /**
+     * Shuts down the pool if it was created by this scheduler. The worlds are not closed.
+     */
+    @Override
+    public void close() {
+        if (ownsExecutor) {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package com.github.libsm64;
+
+import com.github.libsm64.internal.Utils;
+
+import java.io.IOException;
+import java.lang.foreign.*;
+import java.lang.invoke.VarHandle;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The entry point of the child processes started by {@link WorkerSupervisor WorkerSupervisor}. Every worker owns one
+ * libsm64 world and exchanges inputs and states with the supervisor through a memory mapped file.
+ * <p>
+ * The shared file starts with a header followed by one slot per Mario. The supervisor writes the inputs and commands of
+ * every slot and publishes them by incrementing the request sequence, the worker ticks every Mario and answers by
+ * storing the same value in the response sequence.
+ */
+public final class WorldWorker {
+    static final int MAGIC = 0x34364D53; // SM64
+    
+    static final int STATUS_STARTING = 0;
+    static final int STATUS_READY = 1;
+    static final int STATUS_FAILED = 2;
+    
+    static final int COMMAND_NONE = 0;
+    static final int COMMAND_SPAWN = 1;
+    static final int COMMAND_DELETE = 2;
+    
+    static final MemoryLayout HEADER_LAYOUT = Utils.struct(
+        Utils.u32("magic"),
+        Utils.u32("capacity"),
+        Utils.u32("status"),
+        Utils.u32("shutdown"),
+        Utils.u64("requestSequence"),
+        Utils.u64("responseSequence")
+    );
+    static final long HEADER_BYTES = HEADER_LAYOUT.byteSize();
+    
+    static final VarHandle MAGIC_HANDLE = Utils.varHandle(HEADER_LAYOUT, "magic");
+    static final VarHandle CAPACITY = Utils.varHandle(HEADER_LAYOUT, "capacity");
+    static final VarHandle STATUS = Utils.varHandle(HEADER_LAYOUT, "status");
+    static final VarHandle SHUTDOWN = Utils.varHandle(HEADER_LAYOUT, "shutdown");
+    static final VarHandle REQUEST_SEQUENCE = Utils.varHandle(HEADER_LAYOUT, "requestSequence");
+    static final VarHandle RESPONSE_SEQUENCE = Utils.varHandle(HEADER_LAYOUT, "responseSequence");
+    
+    static final MemoryLayout SLOT_LAYOUT = Utils.struct(
+        Utils.s32("command"),
+        Utils.s32("marioId"),
+        Utils.s16("spawnX"),
+        Utils.s16("spawnY"),
+        Utils.s16("spawnZ"),
+        SM64MarioInputs.LAYOUT.withName("inputs"),
+        SM64MarioState.LAYOUT.withName("state")
+    );
+    static final long SLOT_BYTES = SLOT_LAYOUT.byteSize();
+    
+    static final VarHandle COMMAND = Utils.varHandle(SLOT_LAYOUT, "command");
+    static final VarHandle MARIO_ID = Utils.varHandle(SLOT_LAYOUT, "marioId");
+    static final VarHandle SPAWN_X = Utils.varHandle(SLOT_LAYOUT, "spawnX");
+    static final VarHandle SPAWN_Y = Utils.varHandle(SLOT_LAYOUT, "spawnY");
+    static final VarHandle SPAWN_Z = Utils.varHandle(SLOT_LAYOUT, "spawnZ");
+    static final long INPUTS_OFFSET = Utils.offset(SLOT_LAYOUT, "inputs");
+    static final long STATE_OFFSET = Utils.offset(SLOT_LAYOUT, "state");
+    
+    /**
+     * Gets the size of a shared file.
+     *
+     * @param capacity The amount of slots in the file
+     * @return The size in bytes
+     */
+    static long bytes(int capacity) {
+        return HEADER_BYTES + SLOT_BYTES * capacity;
+    }
+    
+    /**
+     * Gets a slot from a shared file.
+     *
+     * @param shared The shared file
+     * @param slot The index of the slot
+     * @return The slot
+     */
+    static MemorySegment slot(MemorySegment shared, int slot) {
+        return shared.asSlice(HEADER_BYTES + SLOT_BYTES * slot, SLOT_BYTES);
+    }
+    
+    /**
+     * Starts a worker.
+     *
+     * @param args The shared file, the ROM and optionally a {@link SM64SurfaceCache SM64SurfaceCache} file
+     * @throws IOException If any of the files could not be read
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || args.length > 3) {
+            System.err.println("Usage: WorldWorker <shared file> <rom> [surfaces]");
+            System.exit(1);
+        }
+        
+        try (
+            var session = MemorySession.openShared();
+            var channel = FileChannel.open(Path.of(args[0]), StandardOpenOption.READ, StandardOpenOption.WRITE)
+        ) {
+            var shared = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size(), session);
+            var header = shared.asSlice(0, HEADER_BYTES);
+            if ((int) MAGIC_HANDLE.get(header) != MAGIC) {
+                throw new IOException("Bad shared file magic");
+            }
+            
+            try {
+                new WorldWorker(session, shared).run(
+                    Path.of(args[1]),
+                    args.length == 3 ? Path.of(args[2]) : null
+                );
+            } catch (Throwable e) {
+                STATUS.setRelease(header, STATUS_FAILED);
+                throw e;
+            }
+        }
+    }
+    
+    private final MemorySession session;
+    private final MemorySegment header;
+    private final MemorySegment[] slots;
+    private final SM64MarioInputs[] inputs;
+    private final SM64MarioState[] states;
+    
+    /**
+     * The geometry is not sent back to the supervisor, every Mario shares these buffers.
+     */
+    private final SM64MarioGeometryBuffers buffers;
+    
+    private WorldWorker(MemorySession session, MemorySegment shared) {
+        this.session = session;
+        
+        header = shared.asSlice(0, HEADER_BYTES);
+        var capacity = (int) CAPACITY.get(header);
+        slots = new MemorySegment[capacity];
+        inputs = new SM64MarioInputs[capacity];
+        states = new SM64MarioState[capacity];
+        for (int i = 0; i < capacity; i++) {
+            var slot = slot(shared, i);
+            slots[i] = slot;
+            inputs[i] = new SM64MarioInputs(slot.asSlice(INPUTS_OFFSET, SM64MarioInputs.BYTES));
+            states[i] = new SM64MarioState(slot.asSlice(STATE_OFFSET, SM64MarioState.BYTES));
+        }
+        
+        buffers = SM64MarioGeometryBuffers.allocate(session);
+    }
+    
+    private void run(Path romPath, Path surfacesPath) throws IOException {
+        var rom = SM64Rom.load(romPath, session).segment();
+        var texture = session.allocate(LibSM64.SM64_TEXTURE_WIDTH * LibSM64.SM64_TEXTURE_HEIGHT * 4, Long.BYTES);
+        LibSM64.sm64_global_init(rom, texture, MemoryAddress.NULL);
+        
+        try {
+            if (surfacesPath != null) {
+                LibSM64.sm64_static_surfaces_load(SM64SurfaceCache.map(surfacesPath, session));
+            }
+            
+            STATUS.setRelease(header, STATUS_READY);
+            
+            var parent = ProcessHandle.current().parent();
+            long lastSequence = (long) REQUEST_SEQUENCE.getAcquire(header);
+            while (true) {
+                long sequence;
+                int spins = 0;
+                while ((sequence = (long) REQUEST_SEQUENCE.getAcquire(header)) == lastSequence) {
+                    if ((int) SHUTDOWN.getAcquire(header) != 0) {
+                        return;
+                    }
+                    // Don't outlive the supervisor
+                    if ((spins & 0xFFF) == 0xFFF && !parent.map(ProcessHandle::isAlive).orElse(false)) {
+                        return;
+                    }
+                    spins = Utils.backOff(spins);
+                }
+                lastSequence = sequence;
+                
+                tick();
+                RESPONSE_SEQUENCE.setRelease(header, sequence);
+            }
+        } finally {
+            LibSM64.sm64_global_terminate();
+        }
+    }
+    
+    private void tick() {
+        for (int i = 0; i < slots.length; i++) {
+            var slot = slots[i];
+            var marioId = (int) MARIO_ID.get(slot);
+            
+            switch ((int) COMMAND.get(slot)) {
+                case COMMAND_SPAWN -> {
+                    if (marioId >= 0) {
+                        LibSM64.sm64_mario_delete(marioId);
+                    }
+                    marioId = LibSM64.sm64_mario_create((short) SPAWN_X.get(slot), (short) SPAWN_Y.get(slot), (short) SPAWN_Z.get(slot));
+                    MARIO_ID.set(slot, marioId);
+                }
+                case COMMAND_DELETE -> {
+                    if (marioId >= 0) {
+                        LibSM64.sm64_mario_delete(marioId);
+                    }
+                    marioId = -1;
+                    MARIO_ID.set(slot, marioId);
+                }
+                default -> {}
+            }
+            COMMAND.set(slot, COMMAND_NONE);
+            
+            if (marioId >= 0) {
+                LibSM64.sm64_mario_tick(marioId, inputs[i], states[i], buffers);
+            }
+        }
+    }
+}
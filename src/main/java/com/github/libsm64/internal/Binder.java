@@ -3,56 +3,154 @@ package com.github.libsm64.internal;
 import java.io.IOException;
 import java.lang.foreign.*;
 import java.lang.invoke.MethodHandle;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Locale;
 
 /**
  * A simple helper for creating Java bindings to the libsm64 library.
  */
 public final class Binder {
     /**
-     * The cached binder instance, or `null` if not yet loaded.
+     * The directory extracted natives are cached in, can be changed with the `jsm64.cache` system property.
      */
-    private static Binder binder;
+    private static final Path CACHE_DIRECTORY = Path.of(System.getProperty(
+        "jsm64.cache",
+        Path.of(System.getProperty("java.io.tmpdir"), "jsm64").toString()
+    ));
     
     /**
-     * Creates a new instance of binder, or gets the existing one.
-     *
-     * @return A binder instance
-     * @throws RuntimeException If the natives could not be loaded
+     * The extension of the hash resources generated next to the natives.
      */
-    public static Binder load() {
-        if (binder == null) {
+    private static final String HASH_EXTENSION = ".sha256";
+    
+    /**
+     * The extension of the file that remembers the size and modification time of extracted natives.
+     */
+    private static final String SIDECAR_EXTENSION = ".extracted";
+    
+    /**
+     * Holds the shared binder, the class initialization lock makes concurrent first use safe.
+     */
+    private static final class Shared {
+        private static final Binder BINDER;
+        
+        static {
             try {
-                binder = new Binder(extractNatives());
+                BINDER = new Binder(cachedNatives(), true, false);
             } catch (IOException e) {
-                throw new RuntimeException("Failed to extract libsm64 natives");
+                throw new RuntimeException("Failed to extract libsm64 natives", e);
             }
         }
-        return binder;
     }
     
     /**
-     * Extracts the natives for the current platform into a temporary directory.
+     * Gets the shared binder, loading it on first use.
+     *
+     * @return The shared binder instance
+     * @throws RuntimeException If the natives could not be loaded
+     */
+    public static Binder load() {
+        return Shared.BINDER;
+    }
+    
+    /**
+     * Creates a new binder with its own copy of the natives. libsm64 keeps all of its state in globals, every copy gets
+     * its own set of globals so they can be used independently of each other and of {@link #load() load}.
+     *
+     * @return A new binder instance
+     * @throws RuntimeException If the natives could not be loaded
+     */
+    public static Binder loadIsolated() {
+        try {
+            // The dynamic loader reuses libraries that are already open, every isolated binder needs its own file
+            var natives = cachedNatives();
+            var copy = Files.createTempFile("libsm64", OperatingSystem.get().extension());
+            Files.copy(natives, copy, StandardCopyOption.REPLACE_EXISTING);
+            return new Binder(copy, false, true);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to extract libsm64 natives", e);
+        }
+    }
+    
+    /**
+     * Gets the natives for the current platform from the cache, extracting them if they are missing or damaged. The
+     * cache directory is named after the SHA-256 of the natives, so different versions never share a file and
+     * concurrent JVMs always agree on the contents. The hash is generated at build time next to the natives, the
+     * natives themselves are only read from the jar when they have to be extracted.
      *
-     * @return The {@link Path Path} of the extracted natives
+     * @return The {@link Path Path} of the cached natives
      * @throws IOException If the natives could not be written
      * @throws RuntimeException If the current platform and/or architecture is not supported
      */
-    private static Path extractNatives() throws IOException {
+    private static Path cachedNatives() throws IOException {
         var os = OperatingSystem.get();
         var arch = Architecture.get();
         
-        var input = Binder.class.getResourceAsStream("/natives/libsm64/" + os + '/' + arch + "/libsm64.so");
+        var resource = "/natives/libsm64/" + os + '/' + arch + "/libsm64.so";
+        var input = Binder.class.getResourceAsStream(resource);
         if (input == null) {
             throw new RuntimeException("Unsupported operating system/architecture combination: " + os + ", " + arch);
         }
+        
+        try (input) {
+            byte[] natives = null;
+            var hash = readHash(resource + HASH_EXTENSION);
+            if (hash == null) {
+                // Running from a tree that was not built with Gradle, there is no generated hash
+                natives = input.readAllBytes();
+                hash = sha256(natives);
+            }
+            
+            var directory = CACHE_DIRECTORY.resolve(hash);
+            var file = directory.resolve("libsm64" + os.extension());
+            var sidecar = directory.resolve(file.getFileName() + SIDECAR_EXTENSION);
+            // The sidecar is written after the library was moved into place, a library that was cut short or replaced
+            // does not match it
+            if (Files.isRegularFile(file) && hash.equals(Utils.readSidecar(sidecar, Files.size(file), Files.getLastModifiedTime(file).toMillis()))) {
+                return file;
+            }
+            
+            if (natives == null) {
+                natives = input.readAllBytes();
+            }
+            
+            // Other JVMs never see a partial library
+            Files.createDirectories(directory);
+            Utils.writeAtomically(file, natives);
+            Utils.writeSidecar(sidecar, Files.size(file), Files.getLastModifiedTime(file).toMillis(), hash);
+            return file;
+        }
+    }
     
+    /**
+     * Reads the hash resource that was generated for a native library.
+     *
+     * @return The lower case hex hash or null if there is none
+     */
+    private static String readHash(String resource) throws IOException {
+        var input = Binder.class.getResourceAsStream(resource);
+        if (input == null) {
+            return null;
+        }
+        
+        String hash;
         try (input) {
-            var tempFile = Files.createTempFile("libsm64", os.extension());
-            Files.copy(input, tempFile, StandardCopyOption.REPLACE_EXISTING);
-            return tempFile;
+            hash = new String(input.readAllBytes(), StandardCharsets.US_ASCII).trim().toLowerCase(Locale.ROOT);
+        }
+        return hash.length() == 64 ? hash : null;
+    }
+    
+    private static String sha256(byte[] data) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError("SHA-256 is required to be supported", e);
         }
     }
     
@@ -72,27 +170,37 @@ public final class Binder {
     private final MemorySession session = MemorySession.openShared();
     
     /**
-     * Opens the provided libsm64 natives. If on Windows the natives file will be deleted on JVM shutdown, on *nix
-     * platforms it will be deleted after loading.
+     * True if this is the binder returned by {@link #load() load}.
+     */
+    private final boolean shared;
+    
+    /**
+     * Opens the provided libsm64 natives. Temporary natives are deleted after loading, or on JVM shutdown if the
+     * platform does not allow deleting open libraries.
      *
      * @param natives The natives to read
+     * @param shared True if this is the shared binder
+     * @param temporary True if the natives should be deleted
      */
-    private Binder(Path natives) {
-        // Only allow a single instance
-        if (binder != null) {
-            throw new AssertionError("Only one Binder instance is allowed");
-        }
-    
+    private Binder(Path natives, boolean shared, boolean temporary) {
+        this.shared = shared;
+        
         // Get the native stuff
         linker = Linker.nativeLinker();
         lookup = SymbolLookup.libraryLookup(natives, session);
         
+        if (!temporary) {
+            return;
+        }
+        
         try {
             Files.delete(natives);
         } catch (IOException ignored) {
             // Windows is weird, deal with the weirdness.
             Runtime.getRuntime().addShutdownHook(new Thread(() -> {
-                session.close();
+                if (session.isAlive()) {
+                    session.close();
+                }
                 try {
                     Files.delete(natives);
                 } catch (IOException ignored2) {}
@@ -132,6 +240,19 @@ public final class Binder {
         return downcall(name, result == null ? FunctionDescriptor.ofVoid(arguments) : FunctionDescriptor.of(result, arguments));
     }
     
+    /**
+     * Gets the address of a symbol in the natives of this binder.
+     *
+     * @param name The symbol name
+     * @return The address of the symbol
+     * @throws IllegalArgumentException If the symbol does not exist
+     */
+    public MemoryAddress symbol(String name) {
+        return lookup.lookup(name)
+            .map(MemorySegment::address)
+            .orElseThrow(() -> new IllegalArgumentException("Failed to find symbol " + name));
+    }
+    
     /**
      * Creates a {@link MemorySegment MemorySegment} that points to a native callback.
      *
@@ -143,4 +264,17 @@ public final class Binder {
     public MemorySegment upcall(MethodHandle handle, FunctionDescriptor descriptor, MemorySession session) {
         return linker.upcallStub(handle, descriptor, session);
     }
+    
+    /**
+     * Unloads the natives of this binder, every handle created by this binder becomes invalid. The shared binder
+     * returned by {@link #load() load} can not be closed.
+     *
+     * @throws IllegalStateException If this is the shared binder
+     */
+    public void close() {
+        if (shared) {
+            throw new IllegalStateException("The shared Binder can not be closed");
+        }
+        session.close();
+    }
 }
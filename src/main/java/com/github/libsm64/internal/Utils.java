@@ -1,8 +1,15 @@
 package com.github.libsm64.internal;
 
+import java.io.IOException;
 import java.lang.foreign.*;
 import java.lang.invoke.VarHandle;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Some utilities.
@@ -10,34 +17,49 @@ import java.util.ArrayList;
 public final class Utils {
     /**
      * Creates a new {@link MemoryLayout MemoryLayout} from the provided members. Ensures that the elements are
-     * correctly aligned. Providing alignment members is not required.
+     * correctly aligned and that the end is padded to the alignment of the struct, so arrays of the layout match the C
+     * layout. Providing alignment members is not required.
      *
      * @param members The members of the new {@link MemoryLayout MemoryLayout}
      * @return The new {@link MemoryLayout MemoryLayout}
      */
     public static MemoryLayout struct(MemoryLayout... members) {
         var memberList = new ArrayList<MemoryLayout>();
-    
-        long currentAlignment = 0;
+        
+        long structAlignment = 1;
         long size = 0;
         for (var member : members) {
             var alignment = member.byteAlignment();
-            if (currentAlignment < alignment) {
-                long padding = size & (alignment - 1);
-                if (padding != 0) {
-                    size += padding;
-                    memberList.add(MemoryLayout.paddingLayout(padding << 3));
-                }
+            long padding = padding(size, alignment);
+            if (padding != 0) {
+                size += padding;
+                memberList.add(MemoryLayout.paddingLayout(padding << 3));
             }
-            currentAlignment = alignment;
+            structAlignment = Math.max(structAlignment, alignment);
             
             memberList.add(member);
             size += member.byteSize();
         }
         
+        long padding = padding(size, structAlignment);
+        if (padding != 0) {
+            memberList.add(MemoryLayout.paddingLayout(padding << 3));
+        }
+        
         return MemoryLayout.structLayout(memberList.toArray(MemoryLayout[]::new));
     }
     
+    /**
+     * Gets the amount of padding bytes required to align the provided size.
+     *
+     * @param size The current size
+     * @param alignment The required alignment, must be a power of two
+     * @return The amount of padding in bytes
+     */
+    private static long padding(long size, long alignment) {
+        return (alignment - (size & (alignment - 1))) & (alignment - 1);
+    }
+    
     /**
      * An unsigned byte.
      */
@@ -88,6 +110,16 @@ public final class Utils {
      */
     public static final MemoryLayout S32 = ValueLayout.JAVA_INT;
     
+    /**
+     * Returns a signed int with the provided name.
+     *
+     * @param name The name of the int
+     * @return The {@link MemoryLayout MemoryLayout} signed int layout
+     */
+    public static MemoryLayout s32(String name) {
+        return S32.withName(name);
+    }
+    
     /**
      * An unsigned int.
      */
@@ -103,6 +135,21 @@ public final class Utils {
         return U32.withName(name);
     }
     
+    /**
+     * An unsigned long.
+     */
+    public static final MemoryLayout U64 = ValueLayout.JAVA_LONG;
+    
+    /**
+     * Returns an unsigned long with the provided name.
+     *
+     * @param name The name of the long
+     * @return The {@link MemoryLayout MemoryLayout} unsigned long layout
+     */
+    public static MemoryLayout u64(String name) {
+        return U64.withName(name);
+    }
+    
     /**
      * A float.
      */
@@ -224,4 +271,75 @@ public final class Utils {
             throw new IllegalArgumentException(message + ", expected " + size + " and got " + segment.byteSize());
         }
     }
+    
+    /**
+     * Backs off while waiting for another thread or process. Spins for a while and then starts parking the thread for
+     * short periods of time.
+     *
+     * @param spins The amount of times this was called for the current wait, starting at 0
+     * @return The new spin count
+     */
+    public static int backOff(int spins) {
+        if (spins < 1_000) {
+            Thread.onSpinWait();
+        } else {
+            LockSupport.parkNanos(50_000);
+        }
+        return spins + 1;
+    }
+    
+    /**
+     * Writes a file through a temporary file next to it that is moved into place, other threads and processes never
+     * see a partially written file.
+     *
+     * @param file The file to write
+     * @param data The new contents
+     * @throws IOException If the file could not be written
+     */
+    public static void writeAtomically(Path file, byte[] data) throws IOException {
+        var temp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            Files.write(temp, data);
+            try {
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+    
+    /**
+     * Reads a hash remembered for a file, the sidecar is a single "size modified hash" line. A file that was changed
+     * or replaced since the sidecar was written has a different size or modification time and does not match.
+     *
+     * @param sidecar The sidecar file
+     * @param size The current size of the file
+     * @param modified The current modification time of the file in milliseconds
+     * @return The hash or null if there is none or the file changed
+     */
+    public static String readSidecar(Path sidecar, long size, long modified) {
+        try {
+            var parts = Files.readString(sidecar, StandardCharsets.US_ASCII).trim().split(" ");
+            if (parts.length == 3 && Long.parseLong(parts[0]) == size && Long.parseLong(parts[1]) == modified && parts[2].length() == 64) {
+                return parts[2];
+            }
+        } catch (IOException | NumberFormatException ignored) {}
+        return null;
+    }
+    
+    /**
+     * Remembers the hash of a file in a sidecar, failures are ignored because the sidecar is only an optimization.
+     *
+     * @param sidecar The sidecar file
+     * @param size The size of the file
+     * @param modified The modification time of the file in milliseconds
+     * @param hash The hash of the file
+     */
+    public static void writeSidecar(Path sidecar, long size, long modified, String hash) {
+        try {
+            writeAtomically(sidecar, (size + " " + modified + " " + hash + '\n').getBytes(StandardCharsets.US_ASCII));
+        } catch (IOException | UnsupportedOperationException ignored) {}
+    }
 }
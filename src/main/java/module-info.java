@@ -1,2 +1,8 @@
 @SuppressWarnings("JavaModuleNaming")
-module com.github.libsm64 {}
+module com.github.libsm64 {
+    requires java.management;
+    requires jdk.jfr;
+    
+    // The metrics MXBean interface has to be visible to the platform MBean server
+    exports com.github.libsm64 to java.management;
+}